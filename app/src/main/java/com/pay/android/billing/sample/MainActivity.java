@@ -94,7 +94,9 @@ public class MainActivity extends AppCompatActivity {
      */
     public void pay() {
         billingManager = BillingManager.getInstance();
-        billingManager.setupGooglePayListener(this, MainActivity.class.getSimpleName(), billingUpdateListener);
+        billingManager.setListenerLeakCheck(BuildConfig.DEBUG);
+        // 绑定Activity生命周期，onDestroy时自动移除监听；billingUpdateListener为成员变量，可以弱引用持有
+        billingManager.setupGooglePayListener(this, this, MainActivity.class.getSimpleName(), billingUpdateListener, true);
         billingManager.setPermanentInappSkus(PRODUCT_ID);
         billingManager.setSubsSkus(SUBSCRIBE_ID);
         billingManager.startServiceConnection();
@@ -0,0 +1,1751 @@
+package com.pay.android.billing;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.android.billingclient.api.AcknowledgePurchaseParams;
+import com.android.billingclient.api.AcknowledgePurchaseResponseListener;
+import com.android.billingclient.api.BillingClient;
+import com.android.billingclient.api.BillingClientStateListener;
+import com.android.billingclient.api.BillingFlowParams;
+import com.android.billingclient.api.BillingResult;
+import com.android.billingclient.api.ConsumeParams;
+import com.android.billingclient.api.ConsumeResponseListener;
+import com.android.billingclient.api.Purchase;
+import com.android.billingclient.api.PurchaseHistoryRecord;
+import com.android.billingclient.api.PurchaseHistoryResponseListener;
+import com.android.billingclient.api.PurchasesUpdatedListener;
+import com.android.billingclient.api.SkuDetails;
+import com.android.billingclient.api.SkuDetailsParams;
+import com.android.billingclient.api.SkuDetailsResponseListener;
+import com.pay.android.billing.ack.AcknowledgeScheduler;
+import com.pay.android.billing.catalogue.PurchaseClassifier;
+import com.pay.android.billing.catalogue.SkuCatalogue;
+import com.pay.android.billing.catalogue.SkuCatalogueLoader;
+import com.pay.android.billing.entitlement.EntitlementObserver;
+import com.pay.android.billing.entitlement.EntitlementSnapshot;
+import com.pay.android.billing.entitlement.EntitlementStore;
+import com.pay.android.billing.history.IncrementalHistorySync;
+import com.pay.android.billing.listener.BaseBillingUpdateListener;
+import com.pay.android.billing.listener.BillingListenerRegistry;
+import com.pay.android.billing.listener.SkuDetailsPageListener;
+import com.pay.android.billing.model.CompactPurchaseStore;
+import com.pay.android.billing.model.PurchaseInfo;
+import com.pay.android.billing.model.StringPool;
+import com.pay.android.billing.request.DefaultRetryPolicy;
+import com.pay.android.billing.request.RateLimiterMetrics;
+import com.pay.android.billing.request.LaneMetrics;
+import com.pay.android.billing.request.RequestScheduler;
+import com.pay.android.billing.request.RetryPolicy;
+import com.pay.android.billing.subs.SubscriptionEntitlementEngine;
+import com.pay.android.billing.subs.SubscriptionState;
+import com.pay.android.billing.utils.ConnectivityMonitor;
+import com.pay.android.billing.utils.LogUtils;
+import com.pay.android.billing.utils.TraceUtils;
+import com.pay.android.billing.verify.VerificationUploader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 使用Google Play结算版本2.0及以上，必须在3天内确认所有购买交易。
+ * 如果没有正确确认，将导致系统对相应的购买交易按退款处理。
+ * 确认购买交易有3种方式：
+ * 1. 消耗型商品，客户端使用API consumeAsync()，比如购买钻石金币等
+ * 2. 对于非消耗型商品，客户端使用API acknowledgePurchase()，包括订阅型商品、永久性商品VIP
+ * 3. 还可以使用服务器API新增的acknowledge()方法进行消耗确认
+ * <p>
+ */
+public class BillingManager implements PurchasesUpdatedListener {
+
+    public static final String TYPE_INAPP = BillingClient.SkuType.INAPP;//内购
+    public static final String TYPE_SUBS = BillingClient.SkuType.SUBS;//订阅
+
+    private BillingClient mBillingClient;
+    private boolean mIsServiceConnected;
+    private boolean mIsConnecting;
+    private Context mAppContext;
+    private final BillingListenerRegistry mListeners = new BillingListenerRegistry();
+
+    // 商品目录，整体替换，读取时不需要加锁
+    private volatile SkuCatalogue mCatalogue = SkuCatalogue.EMPTY;
+    private final StringPool mStringPool = new StringPool();
+
+    private boolean isDebug = false;
+    // launchBillingFlow到onPurchasesUpdated的异步trace区间
+    private int mPurchaseFlowTraceCookie;
+
+    private static final int MAX_PENDING_REQUESTS = 64;
+    private static final long ACK_PERSIST_DELAY_MILLIS = 1000;
+    // Handler按uptime计时，深度睡眠期间不计时，长时间的定时器分段设置，并在回到前台和网络恢复时重新检查
+    private static final long MAX_TIMER_DELAY_MILLIS = 60L * 60 * 1000;
+    public static final int DEFAULT_SKU_DETAILS_PAGE_SIZE = 20;
+    public static final int DEFAULT_SKU_DETAILS_PAGE_PARALLELISM = 2;
+    private int mSkuDetailsPageSize = DEFAULT_SKU_DETAILS_PAGE_SIZE;
+    private int mSkuDetailsPageParallelism = DEFAULT_SKU_DETAILS_PAGE_PARALLELISM;
+    // 未连接或无网络时暂存的请求，连接成功后按顺序执行
+    private final ArrayDeque<BillingOperation> mPendingRequests = new ArrayDeque<>();
+    private final RequestScheduler mScheduler = new RequestScheduler(new RequestScheduler.Clock() {
+        @Override
+        public long now() {
+            return SystemClock.uptimeMillis();
+        }
+    });
+    private RetryPolicy mRetryPolicy = new DefaultRetryPolicy();
+    private long mDefaultRequestTimeout;
+    private final BillingRequest.OnTimeoutListener mRequestTimeoutListener = new BillingRequest.OnTimeoutListener() {
+        @Override
+        public void onTimeout(BillingRequest request) {
+            if (isDebug) LogUtils.e("request timed out >>> [" + request.getOperation() + "]");
+            TraceUtils.beginSection("Billing:dispatch onRequestTimeout");
+            for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                BaseBillingUpdateListener listener = entry.get();
+                if (listener == null) {
+                    continue;
+                }
+                listener.onRequestTimeout(request);
+            }
+            TraceUtils.endSection();
+        }
+    };
+    private static final Object RETRY_TOKEN = new Object();
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drainRequests();
+        }
+    };
+    private ConnectivityMonitor mConnectivityMonitor;
+    private VerificationUploader mVerificationUploader;
+    private AcknowledgeScheduler mAckScheduler;
+    private final Runnable mAckAlarm = new Runnable() {
+        @Override
+        public void run() {
+            scheduleAckAlarm();
+        }
+    };
+    private boolean mAckFlushPosted;
+    // 一批订单全部加入确认队列后再按截止时间执行，并且只保存一次
+    private final Runnable mAckFlush = new Runnable() {
+        @Override
+        public void run() {
+            mAckFlushPosted = false;
+            if (mAckScheduler != null) {
+                mAckScheduler.flush();
+                scheduleAckAlarm();
+            }
+        }
+    };
+    private boolean mAckPersistPosted;
+    // 连续完成的消耗/确认合并保存，进程被杀时未保存的订单会在下次确认时返回ITEM_NOT_OWNED后移除
+    private final Runnable mAckPersist = new Runnable() {
+        @Override
+        public void run() {
+            mAckPersistPosted = false;
+            if (mAckScheduler != null) {
+                mAckScheduler.persist();
+            }
+        }
+    };
+    private final ConnectivityMonitor.OnConnectivityChangedListener mConnectivityListener = new ConnectivityMonitor.OnConnectivityChangedListener() {
+        @Override
+        public void onConnectivityChanged(boolean connected) {
+            if (isDebug) LogUtils.e("network changed >>> [connected：" + connected + "]");
+            if (connected && (!mPendingRequests.isEmpty() || mScheduler.getQueueDepth() > 0)) {
+                // 已连接但离线时暂存的请求直接执行，未连接时先连接
+                if (isReady()) {
+                    runPendingRequests();
+                } else {
+                    parkQueuedRequests();
+                    startServiceConnection();
+                }
+            }
+            if (connected && mVerificationUploader != null) {
+                mVerificationUploader.flush();
+            }
+            if (connected) {
+                checkTimeBasedState();
+            }
+        }
+    };
+    private final LifecycleEventObserver mResumeObserver = new LifecycleEventObserver() {
+        @Override
+        public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+            if (event == Lifecycle.Event.ON_RESUME) {
+                checkTimeBasedState();
+            }
+        }
+    };
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Executor mMainExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mMainHandler.post(command);
+        }
+    };
+    private ExecutorService mWorkExecutor;
+    private IncrementalHistorySync mHistorySync;
+    private final SubscriptionEntitlementEngine mSubsEngine = new SubscriptionEntitlementEngine();
+    // 同一帧内的多次权益变化合并成一次发布
+    private final EntitlementStore mEntitlementStore = new EntitlementStore(new EntitlementStore.FrameScheduler() {
+        @Override
+        public void scheduleFrame(final Runnable publish) {
+            Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    publish.run();
+                }
+            });
+        }
+    });
+    // 待服务端校验的订单，每批处理完成后清空复用
+    private final ArrayList<PurchaseInfo> mVerifyBuffer = new ArrayList<>();
+    /**
+     * 需要消耗或确认的订单：设置了服务端校验时先加入待校验列表，整批上传；否则直接加入确认队列
+     */
+    private final PurchaseUpdateProcessor.Finalizer mFinalizer = new PurchaseUpdateProcessor.Finalizer() {
+        @Override
+        public void finalizePurchase(Purchase purchase, byte kind) {
+            if (mVerificationUploader != null) {
+                PurchaseInfo purchaseInfo = new PurchaseInfo(purchase);
+                purchaseInfo.setSkuType(PurchaseClassifier.skuTypeOf(kind));
+                mVerifyBuffer.add(purchaseInfo);
+            } else {
+                BillingManager.this.finalizePurchase(purchase.getPurchaseToken(), purchase.getSku(),
+                        PurchaseClassifier.skuTypeOf(kind), purchase.getPurchaseTime());
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (mVerifyBuffer.isEmpty()) {
+                return;
+            }
+            // enqueue会复制列表
+            mVerificationUploader.enqueue(mVerifyBuffer);
+            mVerifyBuffer.clear();
+            if (ConnectivityMonitor.getInstance(mAppContext).isConnected()) {
+                mVerificationUploader.flush();
+            }
+        }
+    };
+    private final PurchaseUpdateProcessor mUpdateProcessor = new PurchaseUpdateProcessor(mListeners, mSubsEngine,
+            mEntitlementStore, mFinalizer);
+    private final Runnable mSubsTimer = new Runnable() {
+        @Override
+        public void run() {
+            advanceSubs();
+        }
+    };
+
+    private static volatile BillingManager INSTANCE;
+
+    public static BillingManager getInstance() {
+        if (INSTANCE == null) {
+            synchronized (BillingManager.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new BillingManager();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private BillingManager() {
+        mSubsEngine.setOnStateChangedListener(new SubscriptionEntitlementEngine.OnStateChangedListener() {
+            @Override
+            public void onStateChanged(String sku, SubscriptionState oldState, SubscriptionState newState) {
+                mEntitlementStore.onSubscriptionStateChanged(sku, newState);
+                TraceUtils.beginSection("Billing:dispatch onSubscriptionStateChanged");
+                for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                    BaseBillingUpdateListener listener = entry.get();
+                    if (listener == null) {
+                        continue;
+                    }
+                    listener.onSubscriptionStateChanged(sku, oldState, newState);
+                }
+                TraceUtils.endSection();
+                if (isDebug)
+                    LogUtils.e("subscription state changed >>> [" + sku + "：" + oldState + " -> " + newState + "]");
+            }
+        });
+    }
+
+    /**
+     * 设置一次性内购skus
+     *
+     * @param inAppSKUS 内购id
+     */
+    public void setOneTimeInappSkus(@Nullable String[] inAppSKUS) {
+        if (inAppSKUS != null) {
+            mCatalogue = mCatalogue.withKind(SkuCatalogue.KIND_ONE_TIME, inAppSKUS);
+        }
+    }
+
+    /**
+     * 设置永久性内购skus
+     *
+     * @param inAppSKUS 内购id
+     */
+    public void setPermanentInappSkus(@Nullable String[] inAppSKUS) {
+        if (inAppSKUS != null) {
+            mCatalogue = mCatalogue.withKind(SkuCatalogue.KIND_PERMANENT, inAppSKUS);
+        }
+    }
+
+    /**
+     * 设置订阅skus
+     *
+     * @param subsSKUS 订阅id
+     */
+    public void setSubsSkus(@Nullable String[] subsSKUS) {
+        if (subsSKUS != null) {
+            mCatalogue = mCatalogue.withKind(SkuCatalogue.KIND_SUBS, subsSKUS);
+        }
+    }
+
+    /**
+     * 异步加载本地的商品目录文件(如服务端下发的目录)，版本高于当前目录时替换当前目录
+     *
+     * @param file 目录文件，格式见{@link SkuCatalogueLoader}
+     */
+    public void loadSkuCatalogue(final File file) {
+        getWorkExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    postSkuCatalogue(SkuCatalogueLoader.load(file));
+                } catch (IOException e) {
+                    if (isDebug) LogUtils.e("load sku catalogue failed >>> [" + file + "：" + e + "]");
+                }
+            }
+        });
+    }
+
+    /**
+     * 异步加载assets中的商品目录，版本高于当前目录时替换当前目录
+     *
+     * @param assetName 目录文件，需要不压缩打包
+     */
+    public void loadSkuCatalogueAsset(Context context, final String assetName) {
+        final AssetManager assets = context.getApplicationContext().getAssets();
+        getWorkExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    postSkuCatalogue(SkuCatalogueLoader.loadAsset(assets, assetName));
+                } catch (IOException e) {
+                    if (isDebug) LogUtils.e("load sku catalogue failed >>> [" + assetName + "：" + e + "]");
+                }
+            }
+        });
+    }
+
+    /**
+     * 替换商品目录，只接受版本更高的目录。通过set*Skus设置的sku不改变版本，会被任意版本号大于0的目录替换
+     *
+     * @return 是否已替换
+     */
+    public boolean updateSkuCatalogue(@NonNull SkuCatalogue catalogue) {
+        SkuCatalogue current = mCatalogue;
+        if (catalogue.getVersion() <= current.getVersion()) {
+            return false;
+        }
+        mCatalogue = catalogue;
+        if (isDebug) LogUtils.e("sku catalogue updated >>> [version：" + current.getVersion()
+                + " -> " + catalogue.getVersion() + ",size：" + catalogue.size() + "]");
+        return true;
+    }
+
+    @NonNull
+    public SkuCatalogue getSkuCatalogue() {
+        return mCatalogue;
+    }
+
+    /**
+     * 创建紧凑的购买记录集合，用于保存大量购买或历史记录。sku按当前目录保存为int id，
+     * packageName和developerPayload在所有集合间共享同一个有上限的字符串池
+     *
+     * @param expectedSize 预计的记录数
+     */
+    @NonNull
+    public CompactPurchaseStore createCompactPurchaseStore(int expectedSize) {
+        return new CompactPurchaseStore(mCatalogue, mStringPool, expectedSize);
+    }
+
+    private void postSkuCatalogue(final SkuCatalogue catalogue) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                updateSkuCatalogue(catalogue);
+            }
+        });
+    }
+
+    /**
+     * 设置订阅周期，用于计算订阅到期时间。查询订阅商品信息成功后会自动设置
+     *
+     * @param sku       订阅id
+     * @param isoPeriod ISO 8601周期，如P1M，详见{@link SkuDetails#getSubscriptionPeriod()}
+     */
+    public void setSubsPeriod(String sku, String isoPeriod) {
+        mSubsEngine.setSubscriptionPeriod(sku, isoPeriod);
+    }
+
+    /**
+     * 当前是否有处于有效期或宽限期的订阅，按当前时间推算，不会触发查询
+     */
+    public boolean isSubsEntitled() {
+        return mSubsEngine.isEntitled(System.currentTimeMillis());
+    }
+
+    public boolean isSubsEntitled(String sku) {
+        return mSubsEngine.isEntitled(sku, System.currentTimeMillis());
+    }
+
+    /**
+     * 获取订阅状态，按当前时间推算，不会触发查询
+     *
+     * @return 未查询到的订阅返回null
+     */
+    @Nullable
+    public SubscriptionState getSubsState(String sku) {
+        return mSubsEngine.getState(sku, System.currentTimeMillis());
+    }
+
+    /**
+     * 设置请求限流参数，查询类与修改类请求分别限流
+     *
+     * @param type             {@link RequestScheduler#TYPE_QUERY}或{@link RequestScheduler#TYPE_MUTATION}
+     * @param capacity         允许突发的请求数
+     * @param permitsPerSecond 每秒允许的请求数
+     */
+    public void setRateLimit(int type, int capacity, double permitsPerSecond) {
+        mScheduler.setRate(type, capacity, permitsPerSecond);
+    }
+
+    /**
+     * 获取限流统计信息，包括排队请求数与限流等待时间
+     *
+     * @param type {@link RequestScheduler#TYPE_QUERY}或{@link RequestScheduler#TYPE_MUTATION}
+     */
+    public RateLimiterMetrics getRateLimiterMetrics(int type) {
+        return mScheduler.getMetrics(type);
+    }
+
+    /**
+     * 获取优先级通道的排队统计，包括排队请求数与排队时间
+     *
+     * @param lane 如{@link RequestScheduler#LANE_FINALIZATION}
+     */
+    public LaneMetrics getLaneMetrics(int lane) {
+        return mScheduler.getLaneMetrics(lane);
+    }
+
+    /**
+     * 低优先级请求每等待多久提升一级，防止被持续的高优先级请求饿死，默认{@link RequestScheduler#DEFAULT_AGING_MILLIS}
+     */
+    public void setRequestAgingMillis(long agingMillis) {
+        mScheduler.setAgingMillis(agingMillis);
+    }
+
+    /**
+     * 设置失败重试策略，默认为{@link DefaultRetryPolicy}。
+     * 查询商品、消耗、确认购买失败时先按策略重试，监听只会收到最终结果
+     */
+    public void setRetryPolicy(@NonNull RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * 设置服务端校验，设置后支付成功的订单先上传到服务端校验，校验通过后才会进行消耗或确认，
+     * 校验结果通过{@link BaseBillingUpdateListener#onPurchaseVerified(PurchaseInfo, boolean)}回调
+     *
+     * @param uploader 为null时取消服务端校验
+     */
+    public void setVerificationUploader(@Nullable VerificationUploader uploader) {
+        if (mVerificationUploader != null) {
+            mVerificationUploader.setCallback(null);
+        }
+        mVerificationUploader = uploader;
+        if (uploader == null) {
+            return;
+        }
+        uploader.setCallback(new VerificationUploader.Callback() {
+            @Override
+            public void onVerified(final PurchaseInfo purchaseInfo, final boolean valid) {
+                mMainExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPurchaseVerified(purchaseInfo, valid);
+                    }
+                });
+            }
+
+            @Override
+            public void onUploadFailed(int purchaseCount, boolean retained, Exception e) {
+                if (isDebug) LogUtils.e("verification upload failed >>> [count：" + purchaseCount
+                        + ",retained：" + retained + ",error：" + e + "]");
+            }
+        });
+        if (mAppContext != null && ConnectivityMonitor.getInstance(mAppContext).isConnected()) {
+            uploader.flush();
+        }
+    }
+
+    /**
+     * 获取当前的权益快照
+     */
+    @NonNull
+    public EntitlementSnapshot getEntitlementSnapshot() {
+        return mEntitlementStore.getSnapshot();
+    }
+
+    /**
+     * 监听权益变化，注册后立即回调当前快照；同一帧内的多次变化只回调一次最新的快照
+     */
+    public void addEntitlementObserver(@NonNull EntitlementObserver observer) {
+        mEntitlementStore.addObserver(observer);
+    }
+
+    public void removeEntitlementObserver(@NonNull EntitlementObserver observer) {
+        mEntitlementStore.removeObserver(observer);
+    }
+
+    public void setDebug(boolean debug) {
+        isDebug = debug;
+        mUpdateProcessor.setDebug(debug);
+        if (mHistorySync != null) {
+            mHistorySync.setDebug(debug);
+        }
+    }
+
+    /**
+     * 开启systrace/Perfetto埋点，关闭时几乎没有开销
+     */
+    public void setTraceEnabled(boolean enabled) {
+        TraceUtils.setEnabled(enabled);
+    }
+
+    /**
+     * 设置监听回调
+     *
+     * @param activity
+     * @param tag
+     * @param billingUpdatesListener
+     */
+    public void setupGooglePayListener(Context activity, String tag, BaseBillingUpdateListener billingUpdatesListener) {
+        this.mAppContext = activity.getApplicationContext();
+        mListeners.put(tag, billingUpdatesListener, activity instanceof Activity ? activity : null);
+        getConnectivityMonitor();
+        if (activity instanceof LifecycleOwner) {
+            ((LifecycleOwner) activity).getLifecycle().addObserver(mResumeObserver);
+        }
+    }
+
+    /**
+     * 设置监听回调，绑定生命周期，owner销毁时自动移除，不需要调用{@link #removeGooglePayListener(String)}
+     *
+     * @param context                用于连接谷歌商店
+     * @param owner                  Activity、Fragment或getViewLifecycleOwner()
+     * @param tag
+     * @param billingUpdatesListener
+     * @param weak                   是否弱引用持有监听，为true时需要调用方持有监听(如成员变量)，否则可能被回收
+     */
+    public void setupGooglePayListener(Context context, LifecycleOwner owner, String tag,
+                                       BaseBillingUpdateListener billingUpdatesListener, boolean weak) {
+        this.mAppContext = context.getApplicationContext();
+        mListeners.put(owner, tag, billingUpdatesListener, weak);
+        getConnectivityMonitor();
+        owner.getLifecycle().addObserver(mResumeObserver);
+    }
+
+    public void removeGooglePayListener(String tag) {
+        mListeners.remove(tag);
+    }
+
+    /**
+     * 监听泄漏检查，宿主已销毁但未移除的监听会打印警告，建议只在debug包中开启
+     */
+    public void setListenerLeakCheck(boolean enabled) {
+        mListeners.setLeakCheckEnabled(enabled);
+    }
+
+    /**
+     * @return 宿主已销毁但仍未移除的监听tag
+     */
+    public List<String> checkListenerLeaks() {
+        return mListeners.checkLeaks();
+    }
+
+    /**
+     * 连接谷歌商店(异步)
+     */
+    public void startServiceConnection() {
+        if (mIsConnecting) {
+            return;
+        }
+        mIsConnecting = true;
+        TraceUtils.beginSection(TraceUtils.CONNECT);
+        final int traceCookie = TraceUtils.beginAsyncSection(TraceUtils.CONNECT);
+        mBillingClient = BillingClient
+                .newBuilder(mAppContext)
+                .enablePendingPurchases()
+                .setListener(this)
+                .build();
+        mBillingClient.startConnection(new BillingClientStateListener() {
+            @Override
+            public void onBillingSetupFinished(@NonNull BillingResult billingResult) {
+                TraceUtils.endAsyncSection(TraceUtils.CONNECT, traceCookie);
+                if (billingResult.getResponseCode() == BillingClient.BillingResponseCode.OK) {
+                    mIsConnecting = false;
+                    // The BillingClient is ready. You can query purchases here.
+
+                    confirmHistoryPurchase(TYPE_INAPP);
+                    confirmHistoryPurchase(TYPE_SUBS);
+
+                    TraceUtils.beginSection("Billing:dispatch onBillingClientSetupFinished");
+                    for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                        BaseBillingUpdateListener listener = entry.get();
+                        if (listener == null) {
+                            continue;
+                        }
+                        listener.onBillingClientSetupFinished();
+                    }
+                    TraceUtils.endSection();
+                    mIsServiceConnected = true;
+                    if (isDebug) LogUtils.e("Google billing service connect success!");
+                    runPendingRequests();
+                    // 继续处理上次未完成的消耗与确认
+                    getAckScheduler().resume();
+                    checkTimeBasedState();
+                } else {
+                    mIsServiceConnected = false;
+                    // 取消时仍处于连接中，确认队列补发的消耗/确认只会暂存，不会立即再次连接
+                    cancelPendingRequests();
+                    mIsConnecting = false;
+                    if (isDebug) LogUtils.e("Google billing setup failed >>> [code：" + billingResult.getResponseCode() + "]");
+                }
+            }
+
+            @Override
+            public void onBillingServiceDisconnected() {
+                // Try to restart the connection on the next request to
+                // Google Play by calling the startConnection() method.
+                if (mIsConnecting) {
+                    TraceUtils.endAsyncSection(TraceUtils.CONNECT, traceCookie);
+                }
+                mIsServiceConnected = false;
+                mIsConnecting = false;
+                parkQueuedRequests();
+                TraceUtils.beginSection("Billing:dispatch onBillingServiceDisconnected");
+                for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                    BaseBillingUpdateListener listener = entry.get();
+                    if (listener == null) {
+                        continue;
+                    }
+                    listener.onBillingServiceDisconnected();
+                }
+                TraceUtils.endSection();
+                if (isDebug) LogUtils.e("Google billing service connect fail!");
+            }
+        });
+        TraceUtils.endSection();
+    }
+
+    /**
+     * 网络监听在设置监听回调时注册，网络恢复时执行暂存的请求
+     */
+    private ConnectivityMonitor getConnectivityMonitor() {
+        if (mConnectivityMonitor == null) {
+            mConnectivityMonitor = ConnectivityMonitor.getInstance(mAppContext);
+            mConnectivityMonitor.addListener(mConnectivityListener);
+        }
+        return mConnectivityMonitor;
+    }
+
+    public boolean isServiceConnected() {
+        return mIsServiceConnected;
+    }
+
+    /**
+     * 异步查询商品信息
+     *
+     * @param skuId   商品唯一ID
+     * @param skuType 商品类型 详见{@link BillingClient.SkuType}
+     */
+    public BillingRequest querySkuDetailAsync(final String skuId, final String skuType) {
+        List<String> skuList = new ArrayList<>();
+        skuList.add(skuId);
+        return querySkuDetailAsync(skuList, skuType);
+    }
+
+    /**
+     * 异步查询商品信息
+     *
+     * @param skuList 商品ID List
+     * @param skuType 商品类型 详见{@link BillingClient.SkuType}
+     */
+    public BillingRequest querySkuDetailAsync(final List<String> skuList, final String skuType) {
+        return querySkuDetailAsync(skuList, skuType, RequestScheduler.LANE_INTERACTIVE_QUERY);
+    }
+
+    /**
+     * 异步查询商品信息
+     *
+     * @param skuList 商品ID List
+     * @param skuType 商品类型 详见{@link BillingClient.SkuType}
+     * @param lane    优先级通道，界面等待结果时使用{@link RequestScheduler#LANE_INTERACTIVE_QUERY}，
+     *                预加载等后台刷新使用{@link RequestScheduler#LANE_BACKGROUND_REFRESH}
+     */
+    public BillingRequest querySkuDetailAsync(final List<String> skuList, final String skuType, int lane) {
+        if (isDebug) LogUtils.e("querySkuDetailAsyn >>> [" + skuList + ",type:" + skuType + "]");
+        return executeServiceRequest(new BillingOperation(lane, RequestScheduler.TYPE_QUERY, "querySkuDetails") {
+            @Override
+            void execute() {
+                final SkuDetailsParams.Builder params = SkuDetailsParams.newBuilder();
+                params.setSkusList(skuList).setType(skuType);
+                TraceUtils.beginSection(TraceUtils.QUERY_SKU_DETAILS);
+                final int traceCookie = TraceUtils.beginAsyncSection(TraceUtils.QUERY_SKU_DETAILS);
+                mBillingClient.querySkuDetailsAsync(params.build(), new SkuDetailsResponseListener() {
+                    @Override
+                    public void onSkuDetailsResponse(@NonNull BillingResult billingResult, List<SkuDetails> skuDetailsList) {
+                        TraceUtils.endAsyncSection(TraceUtils.QUERY_SKU_DETAILS, traceCookie);
+                        if (!accept(billingResult)) {
+                            return;
+                        }
+                        // Process the result.
+                        if (billingResult.getResponseCode() == BillingClient.BillingResponseCode.OK && skuDetailsList != null) {
+                            if (TYPE_SUBS.equals(skuType)) {
+                                for (SkuDetails skuDetails : skuDetailsList) {
+                                    mSubsEngine.setSubscriptionPeriod(skuDetails.getSku(), skuDetails.getSubscriptionPeriod());
+                                }
+                            }
+                            TraceUtils.beginSection("Billing:dispatch onQuerySkuDetailSuccess");
+                            for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                                BaseBillingUpdateListener listener = entry.get();
+                                if (listener == null) {
+                                    continue;
+                                }
+                                listener.onQuerySkuDetailSuccess(skuType, skuDetailsList);
+                            }
+                            TraceUtils.endSection();
+                            if (!skuDetailsList.isEmpty()) {
+                                for (SkuDetails skuDetails : skuDetailsList) {
+                                    if (isDebug)
+                                        LogUtils.e("querySkuDetailAsyn success >>> [skuDetails:" + skuDetails.toString() + "]");
+                                }
+                            }
+                        } else {
+                            TraceUtils.beginSection("Billing:dispatch onQuerySkuDetailFailure");
+                            for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                                BaseBillingUpdateListener billingUpdatesListener = entry.get();
+                                if (billingUpdatesListener == null) {
+                                    continue;
+                                }
+                                billingUpdatesListener.onQuerySkuDetailFailure(billingResult.getResponseCode(), billingResult.getDebugMessage());
+                            }
+                            TraceUtils.endSection();
+                        }
+                    }
+                });
+                TraceUtils.endSection();
+            }
+        });
+    }
+
+
+    /**
+     * 所有请求的默认超时时间，从发起请求开始计时(包括等待连接和限流的时间)。
+     * 单个请求可通过{@link BillingRequest#withTimeout(long)}覆盖
+     *
+     * @param timeoutMillis 小于等于0表示不超时，默认不超时
+     */
+    public void setDefaultRequestTimeout(long timeoutMillis) {
+        mDefaultRequestTimeout = timeoutMillis;
+    }
+
+    /**
+     * 分页查询商品信息，适用于sku很多的情况
+     * 每页查询完成后立即通过{@link SkuDetailsPageListener#onPage(String, int, List)}回调，同时查询的页数不超过
+     * {@link #setSkuDetailsPaging(int, int)}设置的并发数，所有页结束后回调{@link SkuDetailsPageListener#onComplete}
+     *
+     * @param skuList  商品ID List
+     * @param skuType  商品类型 详见{@link BillingClient.SkuType}
+     * @param listener 分页回调
+     * @return 整个分页查询的句柄，不使用默认超时；取消或超时后不再回调onComplete。每页是独立的请求，单页超时视为该页失败
+     */
+    public BillingRequest querySkuDetailPaged(@NonNull List<String> skuList, @NonNull String skuType,
+                                              @NonNull SkuDetailsPageListener listener) {
+        if (isDebug) LogUtils.e("querySkuDetailPaged >>> [size：" + skuList.size() + ",type:" + skuType + "]");
+        PagedSkuDetailsQuery query = new PagedSkuDetailsQuery(new ArrayList<>(skuList), skuType, listener);
+        query.start();
+        return query.queryRequest;
+    }
+
+    /**
+     * 设置分页查询商品信息的每页数量和同时查询的页数
+     */
+    public void setSkuDetailsPaging(int pageSize, int parallelism) {
+        mSkuDetailsPageSize = Math.max(1, pageSize);
+        mSkuDetailsPageParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * 一次分页查询的状态，只在主线程访问
+     */
+    private final class PagedSkuDetailsQuery {
+
+        private final List<String> skus;
+        private final String skuType;
+        private final SkuDetailsPageListener listener;
+        private final int pageSize = mSkuDetailsPageSize;
+        private final int parallelism = mSkuDetailsPageParallelism;
+        private final int pageCount;
+        private final List<String> failedSkus = new ArrayList<>();
+        private BillingResult lastFailure;
+        private final List<BillingRequest> pageRequests = new ArrayList<>();
+        final BillingRequest queryRequest = new BillingRequest("querySkuDetailPaged", mMainHandler, mRequestTimeoutListener);
+        private int nextPage;
+        private int running;
+
+        PagedSkuDetailsQuery(List<String> skus, String skuType, SkuDetailsPageListener listener) {
+            this.skus = skus;
+            this.skuType = skuType;
+            this.listener = listener;
+            this.pageCount = (skus.size() + pageSize - 1) / pageSize;
+            queryRequest.setOnAbandonedListener(new BillingRequest.OnAbandonedListener() {
+                @Override
+                public void onAbandoned(BillingRequest request) {
+                    for (BillingRequest pageRequest : new ArrayList<>(pageRequests)) {
+                        pageRequest.cancel();
+                    }
+                }
+            });
+        }
+
+        void start() {
+            if (pageCount == 0) {
+                queryRequest.complete();
+                listener.onComplete(skuType, 0, failedSkus, null);
+                return;
+            }
+            while (running < parallelism && nextPage < pageCount) {
+                queryPage(nextPage++);
+            }
+        }
+
+        private void queryPage(final int page) {
+            running++;
+            final List<String> pageSkus = skus.subList(page * pageSize, Math.min(skus.size(), (page + 1) * pageSize));
+            // 第一页用于尽快显示，其余页作为后台刷新，不阻塞其他界面查询
+            int lane = page == 0 ? RequestScheduler.LANE_INTERACTIVE_QUERY : RequestScheduler.LANE_BACKGROUND_REFRESH;
+            BillingRequest pageRequest = executeServiceRequest(new BillingOperation(lane, RequestScheduler.TYPE_QUERY, "querySkuDetails") {
+                @Override
+                void onAbandoned(BillingRequest request) {
+                    onPageFinished(request, page, pageSkus, abandonedResult(request), null);
+                }
+
+                @Override
+                void execute() {
+                    SkuDetailsParams params = SkuDetailsParams.newBuilder()
+                            .setSkusList(pageSkus)
+                            .setType(skuType)
+                            .build();
+                    TraceUtils.beginSection(TraceUtils.QUERY_SKU_DETAILS);
+                    final int traceCookie = TraceUtils.beginAsyncSection(TraceUtils.QUERY_SKU_DETAILS);
+                    mBillingClient.querySkuDetailsAsync(params, new SkuDetailsResponseListener() {
+                        @Override
+                        public void onSkuDetailsResponse(@NonNull BillingResult billingResult, List<SkuDetails> skuDetailsList) {
+                            TraceUtils.endAsyncSection(TraceUtils.QUERY_SKU_DETAILS, traceCookie);
+                            if (!accept(billingResult)) {
+                                return;
+                            }
+                            onPageFinished(request, page, pageSkus, billingResult, skuDetailsList);
+                        }
+                    });
+                    TraceUtils.endSection();
+                }
+            });
+            if (pageRequest.isActive()) {
+                pageRequests.add(pageRequest);
+            }
+        }
+
+        private void onPageFinished(BillingRequest pageRequest, int page, List<String> pageSkus,
+                                    BillingResult billingResult, List<SkuDetails> skuDetailsList) {
+            pageRequests.remove(pageRequest);
+            if (!queryRequest.isActive()) {
+                return;
+            }
+            running--;
+            if (billingResult.getResponseCode() == BillingClient.BillingResponseCode.OK && skuDetailsList != null) {
+                if (TYPE_SUBS.equals(skuType)) {
+                    for (SkuDetails skuDetails : skuDetailsList) {
+                        mSubsEngine.setSubscriptionPeriod(skuDetails.getSku(), skuDetails.getSubscriptionPeriod());
+                    }
+                }
+                listener.onPage(skuType, page, skuDetailsList);
+            } else {
+                failedSkus.addAll(pageSkus);
+                lastFailure = billingResult;
+                if (isDebug) LogUtils.e("querySkuDetailPaged page failed >>> [page：" + page
+                        + ",code：" + billingResult.getResponseCode() + "]");
+            }
+            if (nextPage < pageCount) {
+                start();
+            } else if (running == 0) {
+                queryRequest.complete();
+                listener.onComplete(skuType, pageCount, failedSkus, lastFailure);
+            }
+        }
+    }
+
+    /**
+     * 异步查询购买历史商品详情
+     *
+     * @param skuType 商品类型 {@link BillingClient.SkuType}
+     */
+    public BillingRequest queryPurchaseHistoryAsync(final @BillingClient.SkuType String skuType) {
+        if (isDebug) LogUtils.e("queryPurchaseHistoryAsync >>> [" + skuType + "]");
+        return executeServiceRequest(new BillingOperation(RequestScheduler.LANE_BACKGROUND_REFRESH, RequestScheduler.TYPE_QUERY, "queryPurchaseHistory") {
+            @Override
+            void execute() {
+                TraceUtils.beginSection(TraceUtils.QUERY_PURCHASE_HISTORY);
+                final int traceCookie = TraceUtils.beginAsyncSection(TraceUtils.QUERY_PURCHASE_HISTORY);
+                mBillingClient.queryPurchaseHistoryAsync(skuType, new PurchaseHistoryResponseListener() {
+                    @Override
+                    public void onPurchaseHistoryResponse(@NonNull BillingResult billingResult, List<PurchaseHistoryRecord> list) {
+                        TraceUtils.endAsyncSection(TraceUtils.QUERY_PURCHASE_HISTORY, traceCookie);
+                        if (!accept(billingResult)) {
+                            return;
+                        }
+                        TraceUtils.beginSection("Billing:dispatch onPurchaseHistoryResponse");
+                        for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                            BaseBillingUpdateListener billingUpdatesListener = entry.get();
+                            if (billingUpdatesListener == null) {
+                                continue;
+                            }
+                            billingUpdatesListener.onPurchaseHistoryResponse(billingResult, list);
+                        }
+                        TraceUtils.endSection();
+                    }
+                });
+                TraceUtils.endSection();
+            }
+        });
+    }
+
+    /**
+     * 增量查询购买历史
+     * 与上一次查询的结果在工作线程中比较，只通过{@link BaseBillingUpdateListener#onPurchaseHistoryDelta(String, List, List)}
+     * 回调新增和变化的记录，查询失败时仍回调{@link BaseBillingUpdateListener#onPurchaseHistoryResponse(BillingResult, List)}
+     *
+     * @param skuType 商品类型 {@link BillingClient.SkuType}
+     */
+    public BillingRequest queryPurchaseHistoryIncremental(final @BillingClient.SkuType String skuType) {
+        if (isDebug) LogUtils.e("queryPurchaseHistoryIncremental >>> [" + skuType + "]");
+        return executeServiceRequest(new BillingOperation(RequestScheduler.LANE_BACKGROUND_REFRESH, RequestScheduler.TYPE_QUERY, "queryPurchaseHistory") {
+            @Override
+            void execute() {
+                TraceUtils.beginSection(TraceUtils.QUERY_PURCHASE_HISTORY);
+                final int traceCookie = TraceUtils.beginAsyncSection(TraceUtils.QUERY_PURCHASE_HISTORY);
+                mBillingClient.queryPurchaseHistoryAsync(skuType, new PurchaseHistoryResponseListener() {
+                    @Override
+                    public void onPurchaseHistoryResponse(@NonNull BillingResult billingResult, List<PurchaseHistoryRecord> list) {
+                        TraceUtils.endAsyncSection(TraceUtils.QUERY_PURCHASE_HISTORY, traceCookie);
+                        if (!accept(billingResult)) {
+                            return;
+                        }
+                        if (billingResult.getResponseCode() != BillingClient.BillingResponseCode.OK) {
+                            TraceUtils.beginSection("Billing:dispatch onPurchaseHistoryResponse");
+                            for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                                BaseBillingUpdateListener billingUpdatesListener = entry.get();
+                                if (billingUpdatesListener == null) {
+                                    continue;
+                                }
+                                billingUpdatesListener.onPurchaseHistoryResponse(billingResult, list);
+                            }
+                            TraceUtils.endSection();
+                            return;
+                        }
+                        getHistorySync().submit(skuType, list, new IncrementalHistorySync.Callback() {
+                            @Override
+                            public void onDelta(String skuType, List<PurchaseHistoryRecord> added, List<PurchaseHistoryRecord> changed) {
+                                TraceUtils.beginSection("Billing:dispatch onPurchaseHistoryDelta");
+                                for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                                    BaseBillingUpdateListener billingUpdatesListener = entry.get();
+                                    if (billingUpdatesListener == null) {
+                                        continue;
+                                    }
+                                    billingUpdatesListener.onPurchaseHistoryDelta(skuType, added, changed);
+                                }
+                                TraceUtils.endSection();
+                                if (isDebug) LogUtils.e("queryPurchaseHistoryIncremental delta >>> [added："
+                                        + added.size() + ",changed：" + changed.size() + "]");
+                            }
+                        });
+                    }
+                });
+                TraceUtils.endSection();
+            }
+        });
+    }
+
+    /**
+     * 清除增量查询的购买历史快照，下一次增量查询会回调全部历史
+     */
+    public void resetPurchaseHistorySnapshot() {
+        if (mAppContext != null) {
+            getHistorySync().reset();
+        }
+    }
+
+    private IncrementalHistorySync getHistorySync() {
+        if (mHistorySync == null) {
+            File dir = new File(mAppContext.getFilesDir(), "billing");
+            mHistorySync = new IncrementalHistorySync(dir, getWorkExecutor(), mMainExecutor);
+            mHistorySync.setDebug(isDebug);
+        }
+        return mHistorySync;
+    }
+
+    private ExecutorService getWorkExecutor() {
+        if (mWorkExecutor == null) {
+            mWorkExecutor = Executors.newSingleThreadExecutor();
+        }
+        return mWorkExecutor;
+    }
+
+    /**
+     * 确认历史购买，最好在每次启动应用前执行一次，防止有未正常确认的商品而导致三天后退款
+     *
+     * @param skuType 商品类型 {@link BillingClient.SkuType}
+     */
+    public BillingRequest confirmHistoryPurchase(final String skuType) {
+        return executeServiceRequest(new BillingOperation(RequestScheduler.LANE_FINALIZATION, RequestScheduler.TYPE_QUERY, "queryPurchases") {
+            @Override
+            void execute() {
+                /* 同步查询历史购买 */
+                TraceUtils.beginSection(TraceUtils.QUERY_PURCHASES);
+                Purchase.PurchasesResult purchasesResult = mBillingClient.queryPurchases(skuType);
+                TraceUtils.endSection();
+                request.complete();
+                if (purchasesResult.getResponseCode() == BillingClient.BillingResponseCode.OK) {
+                    List<Purchase> purchasesList = purchasesResult.getPurchasesList();
+                    if (purchasesList != null && !purchasesList.isEmpty()) {
+                        finalizePurchases(purchasesList, skuType);
+                    }
+
+                    if (TYPE_SUBS.equals(skuType)) {
+                        mSubsEngine.sync(purchasesList, System.currentTimeMillis());
+                        scheduleSubsTimer();
+                        TraceUtils.beginSection("Billing:dispatch onPurchaseSubsOwned");
+                        for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                            BaseBillingUpdateListener billingUpdatesListener = entry.get();
+                            if (billingUpdatesListener == null) {
+                                continue;
+                            }
+                            billingUpdatesListener.onPurchaseSubsOwned(purchasesList);
+                        }
+                        TraceUtils.endSection();
+                    } else if (TYPE_INAPP.equals(skuType)) {
+                        mEntitlementStore.syncInapp(purchasesList);
+                        TraceUtils.beginSection("Billing:dispatch onPurchaseInappOwned");
+                        for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                            BaseBillingUpdateListener billingUpdatesListener = entry.get();
+                            if (billingUpdatesListener == null) {
+                                continue;
+                            }
+                            billingUpdatesListener.onPurchaseInappOwned(purchasesList);
+                        }
+                        TraceUtils.endSection();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * 启动内购流程
+     * 商品查询成功后直接进入购买流程，如果查询商品失败则直接执行{@link BaseBillingUpdateListener#onPurchasesFailure(int, String)}
+     * </p>
+     *
+     * @param skuId   商品ID
+     * @param skuType 商品类型
+     */
+    public BillingRequest launchBillingFlow(Activity activity, final String skuId, final String skuType) {
+        if (isDebug)
+            LogUtils.e("launchBillingFlow > querySkuDetailsAsync >>> [" + skuId + ",type:" + skuType + "]");
+        return executeServiceRequest(new BillingOperation(RequestScheduler.LANE_PURCHASE, RequestScheduler.TYPE_QUERY, "querySkuDetails") {
+            @Override
+            void execute() {
+                List<String> skuList = new ArrayList<>();
+                skuList.add(skuId);
+                final SkuDetailsParams.Builder params = SkuDetailsParams.newBuilder();
+                params.setSkusList(skuList).setType(skuType);
+                TraceUtils.beginSection(TraceUtils.QUERY_SKU_DETAILS);
+                final int traceCookie = TraceUtils.beginAsyncSection(TraceUtils.QUERY_SKU_DETAILS);
+                mBillingClient.querySkuDetailsAsync(params.build(),
+                        new SkuDetailsResponseListener() {
+                            @Override
+                            public void onSkuDetailsResponse(@NonNull BillingResult billingResult, List<SkuDetails> skuDetailsList) {
+                                TraceUtils.endAsyncSection(TraceUtils.QUERY_SKU_DETAILS, traceCookie);
+                                if (!accept(billingResult)) {
+                                    return;
+                                }
+                                // Process the result.
+                                if (billingResult.getResponseCode() == BillingClient.BillingResponseCode.OK && skuDetailsList != null) {
+                                    if (!skuDetailsList.isEmpty()) {
+                                        for (SkuDetails skuDetails : skuDetailsList) {
+                                            // 发起内购
+                                            launchBillingFlow(activity, skuDetails);
+                                            if (isDebug)
+                                                LogUtils.e("querySkuDetailsAsync success >>> [skuDetails:" + skuDetails.toString() + "]");
+                                        }
+                                    }
+                                } else {
+                                    TraceUtils.beginSection("Billing:dispatch onPurchasesFailure");
+                                    for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                                        BaseBillingUpdateListener billingUpdatesListener = entry.get();
+                                        if (billingUpdatesListener == null) {
+                                            continue;
+                                        }
+                                        billingUpdatesListener.onPurchasesFailure(billingResult.getResponseCode(), billingResult.getDebugMessage());
+                                    }
+                                    TraceUtils.endSection();
+                                }
+                            }
+                        });
+                TraceUtils.endSection();
+            }
+        });
+    }
+
+    /**
+     * 发起内购
+     *
+     * @param skuDetails 商品详情
+     */
+    public BillingRequest launchBillingFlow(Activity activity, final SkuDetails skuDetails) {
+        // Retrieve a value for "skuDetails" by calling querySkuDetailsAsync().
+        return executeServiceRequest(new BillingOperation(RequestScheduler.LANE_PURCHASE, RequestScheduler.TYPE_MUTATION, "launchBillingFlow") {
+            @Override
+            void execute() {
+                BillingFlowParams flowParams = BillingFlowParams.newBuilder()
+                        .setSkuDetails(skuDetails)
+                        .build();
+                TraceUtils.beginSection(TraceUtils.LAUNCH_BILLING_FLOW);
+                int responseCode = mBillingClient.launchBillingFlow(activity, flowParams).getResponseCode();
+                TraceUtils.endSection();
+                request.complete();
+                if (responseCode == BillingClient.BillingResponseCode.OK) {
+                    // 异步区间在onPurchasesUpdated中结束
+                    TraceUtils.endAsyncSection(TraceUtils.LAUNCH_BILLING_FLOW, mPurchaseFlowTraceCookie);
+                    mPurchaseFlowTraceCookie = TraceUtils.beginAsyncSection(TraceUtils.LAUNCH_BILLING_FLOW);
+                }
+                if (isDebug)
+                    LogUtils.e("launchBillingFlow >>> [responseCode:" + responseCode + "]");
+            }
+        });
+    }
+
+    /**
+     * 对消耗型商品进行确认购买处理
+     */
+    public BillingRequest consumeAsync(String purchaseToken) {
+        return executeServiceRequest(new ConsumeOperation(purchaseToken));
+    }
+
+    /**
+     * 对非消耗型商品进行确认购买处理
+     */
+    public BillingRequest acknowledgePurchase(String purchaseToken, String skuType) {
+        return executeServiceRequest(new AcknowledgeOperation(purchaseToken, skuType));
+    }
+
+    /**
+     * 消耗操作本身作为回调，参数只构建一次，重试时复用
+     */
+    private final class ConsumeOperation extends BillingOperation implements ConsumeResponseListener {
+        private final String purchaseToken;
+        private final ConsumeParams params;
+        private int traceCookie;
+
+        ConsumeOperation(String purchaseToken) {
+            super(RequestScheduler.LANE_FINALIZATION, RequestScheduler.TYPE_MUTATION, "consume");
+            this.purchaseToken = purchaseToken;
+            this.params = ConsumeParams.newBuilder()
+                    .setPurchaseToken(purchaseToken)
+                    .build();
+        }
+
+        @Override
+        void onAbandoned(BillingRequest request) {
+            onFinalizeFinished(purchaseToken, abandonedResult(request));
+        }
+
+        @Override
+        void execute() {
+            TraceUtils.beginSection(TraceUtils.CONSUME);
+            traceCookie = TraceUtils.beginAsyncSection(TraceUtils.CONSUME);
+            mBillingClient.consumeAsync(params, this);
+            TraceUtils.endSection();
+        }
+
+        @Override
+        public void onConsumeResponse(@NonNull BillingResult billingResult, @NonNull String purchaseToken) {
+            TraceUtils.endAsyncSection(TraceUtils.CONSUME, traceCookie);
+            if (!accept(billingResult)) {
+                return;
+            }
+            onFinalizeFinished(purchaseToken, billingResult);
+            if (billingResult.getResponseCode() == BillingClient.BillingResponseCode.OK) {
+                mEntitlementStore.onConsumed(purchaseToken);
+            }
+            TraceUtils.beginSection("Billing:dispatch onConsumeFinished");
+            for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                BaseBillingUpdateListener billingUpdatesListener = entry.get();
+                if (billingUpdatesListener == null) {
+                    continue;
+                }
+                billingUpdatesListener.onConsumeFinished(purchaseToken, billingResult);
+            }
+            TraceUtils.endSection();
+        }
+    }
+
+    private final class AcknowledgeOperation extends BillingOperation implements AcknowledgePurchaseResponseListener {
+        private final String purchaseToken;
+        private final String skuType;
+        private final AcknowledgePurchaseParams params;
+        private int traceCookie;
+
+        AcknowledgeOperation(String purchaseToken, String skuType) {
+            super(RequestScheduler.LANE_FINALIZATION, RequestScheduler.TYPE_MUTATION, "acknowledge");
+            this.purchaseToken = purchaseToken;
+            this.skuType = skuType;
+            this.params = AcknowledgePurchaseParams.newBuilder()
+                    .setPurchaseToken(purchaseToken)
+                    .build();
+        }
+
+        @Override
+        void onAbandoned(BillingRequest request) {
+            onFinalizeFinished(purchaseToken, abandonedResult(request));
+        }
+
+        @Override
+        void execute() {
+            TraceUtils.beginSection(TraceUtils.ACKNOWLEDGE);
+            traceCookie = TraceUtils.beginAsyncSection(TraceUtils.ACKNOWLEDGE);
+            mBillingClient.acknowledgePurchase(params, this);
+            TraceUtils.endSection();
+        }
+
+        @Override
+        public void onAcknowledgePurchaseResponse(@NonNull BillingResult billingResult) {
+            TraceUtils.endAsyncSection(TraceUtils.ACKNOWLEDGE, traceCookie);
+            if (!accept(billingResult)) {
+                return;
+            }
+            onFinalizeFinished(purchaseToken, billingResult);
+            TraceUtils.beginSection("Billing:dispatch onAcknowledgeFinish");
+            for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                BaseBillingUpdateListener billingUpdatesListener = entry.get();
+                if (billingUpdatesListener == null) {
+                    continue;
+                }
+                if (TYPE_SUBS.equals(skuType)) {
+                    billingUpdatesListener.onAcknowledgeSubsFinish(billingResult);
+                } else if (TYPE_INAPP.equals(skuType)) {
+                    billingUpdatesListener.onAcknowledgeInappFinish(billingResult);
+                }
+            }
+            TraceUtils.endSection();
+        }
+    }
+
+    /**
+     * 连接断开重试策略
+     * 服务未就绪或无网络时先暂存请求，有网络时立即重连，无网络时等待网络恢复后由{@link ConnectivityMonitor}触发重连或执行
+     */
+    private BillingRequest executeServiceRequest(BillingOperation operation) {
+        boolean connected = getConnectivityMonitor().isConnected();
+        if (isReady() && connected) {
+            mScheduler.enqueue(operation.lane, operation.type, operation);
+            drainRequests();
+            return operation.request;
+        }
+        if (mPendingRequests.size() >= MAX_PENDING_REQUESTS) {
+            mPendingRequests.poll().request.cancel();
+            if (isDebug) LogUtils.e("too many pending requests, drop the oldest one");
+        }
+        mPendingRequests.add(operation);
+        if (connected) {
+            startServiceConnection();
+        } else if (isDebug) {
+            LogUtils.e("network unavailable, request parked >>> [pending：" + mPendingRequests.size() + "]");
+        }
+        return operation.request;
+    }
+
+    /**
+     * 请求被取消或超时时传给内部处理的结果
+     */
+    private static BillingResult abandonedResult(BillingRequest request) {
+        return BillingResult.newBuilder()
+                .setResponseCode(BillingClient.BillingResponseCode.SERVICE_TIMEOUT)
+                .setDebugMessage(request.isTimedOut() ? "request timed out" : "request cancelled")
+                .build();
+    }
+
+    /**
+     * 支持失败重试的请求，重试时重新提交自身，共用同一个重试次数
+     */
+    private abstract class BillingOperation implements Runnable {
+
+        final int lane;
+        final int type;
+        final BillingRequest request;
+        private int retryCount;
+        private Runnable retryRunnable;
+
+        BillingOperation(int lane, int type, String operation) {
+            this.lane = lane;
+            this.type = type;
+            this.request = new BillingRequest(operation, mMainHandler, mRequestTimeoutListener);
+            request.withTimeout(mDefaultRequestTimeout);
+            request.setOnAbandonedListener(new BillingRequest.OnAbandonedListener() {
+                @Override
+                public void onAbandoned(BillingRequest request) {
+                    // 释放排队中的请求和重试
+                    mScheduler.remove(BillingOperation.this);
+                    mPendingRequests.remove(BillingOperation.this);
+                    if (retryRunnable != null) {
+                        mMainHandler.removeCallbacks(retryRunnable);
+                    }
+                    BillingOperation.this.onAbandoned(request);
+                }
+            });
+        }
+
+        @Override
+        public final void run() {
+            if (request.isActive()) {
+                execute();
+            }
+        }
+
+        /**
+         * 调用Google Play，同步请求执行后需要调用request.complete()
+         */
+        abstract void execute();
+
+        /**
+         * 请求被取消或超时，释放占用的资源
+         */
+        void onAbandoned(BillingRequest request) {
+        }
+
+        /**
+         * 处理Google Play的结果，请求已被取消或超时时忽略，按重试策略需要重试时重新提交
+         *
+         * @return true表示需要处理结果并通知监听
+         */
+        boolean accept(BillingResult billingResult) {
+            if (!request.isActive() || retryIfNeeded(billingResult)) {
+                return false;
+            }
+            request.complete();
+            return true;
+        }
+
+        /**
+         * 按重试策略判断是否需要重试，需要则在退避时间后重新提交
+         *
+         * @return true表示已安排重试，不需要通知监听
+         */
+        private boolean retryIfNeeded(BillingResult billingResult) {
+            int responseCode = billingResult.getResponseCode();
+            if (!mRetryPolicy.isRetryable(responseCode) || retryCount >= mRetryPolicy.getMaxRetries()) {
+                return false;
+            }
+            retryCount++;
+            long delay = mRetryPolicy.getRetryDelayMillis(retryCount);
+            if (isDebug) LogUtils.e("request failed, retry >>> [code：" + responseCode
+                    + ",retry：" + retryCount + ",delay：" + delay + "ms]");
+            if (retryRunnable == null) {
+                retryRunnable = new Runnable() {
+                    @Override
+                    public void run() {
+                        executeServiceRequest(BillingOperation.this);
+                    }
+                };
+            }
+            mMainHandler.postAtTime(retryRunnable, RETRY_TOKEN, SystemClock.uptimeMillis() + delay);
+            return true;
+        }
+    }
+
+    /**
+     * 连接失败时取消暂存的请求，调用方通过{@link BillingRequest#isCancelled()}得到结果，
+     * 消耗/确认仍保留在确认队列中，下次连接成功后继续
+     */
+    private void cancelPendingRequests() {
+        if (mPendingRequests.isEmpty()) {
+            return;
+        }
+        List<BillingOperation> parked = new ArrayList<>(mPendingRequests);
+        mPendingRequests.clear();
+        for (BillingOperation operation : parked) {
+            operation.request.cancel();
+        }
+    }
+
+    private void runPendingRequests() {
+        BillingOperation operation;
+        while ((operation = mPendingRequests.poll()) != null) {
+            mScheduler.enqueue(operation.lane, operation.type, operation);
+        }
+        drainRequests();
+    }
+
+    /**
+     * 限流队列中的请求移回暂存队列，等待重新连接后执行
+     *
+     * @return 是否有请求被移回
+     */
+    private boolean parkQueuedRequests() {
+        if (mScheduler.getQueueDepth() == 0) {
+            return false;
+        }
+        for (Runnable runnable : mScheduler.takeAll()) {
+            mPendingRequests.add((BillingOperation) runnable);
+        }
+        return true;
+    }
+
+    /**
+     * 执行已获取到令牌的请求，其余请求在下一个令牌可用时再执行
+     */
+    private void drainRequests() {
+        mMainHandler.removeCallbacks(mDrainRunnable);
+        if (!isReady()) {
+            // 排队期间连接断开，请求回到暂存队列并重新连接
+            if (parkQueuedRequests() && getConnectivityMonitor().isConnected()) {
+                startServiceConnection();
+            }
+            return;
+        }
+        long delay = mScheduler.drain();
+        if (delay >= 0) {
+            mMainHandler.postDelayed(mDrainRunnable, delay);
+            if (isDebug) LogUtils.e("requests throttled >>> [queue：" + mScheduler.getQueueDepth() + ",delay：" + delay + "ms]");
+        }
+    }
+
+    /**
+     * 购买交易更新
+     */
+    @Override
+    public void onPurchasesUpdated(BillingResult billingResult, @Nullable List<Purchase> purchases) {
+        TraceUtils.endAsyncSection(TraceUtils.LAUNCH_BILLING_FLOW, mPurchaseFlowTraceCookie);
+        mPurchaseFlowTraceCookie = 0;
+        TraceUtils.beginSection(TraceUtils.PURCHASES_UPDATED);
+        if (billingResult.getResponseCode() == BillingClient.BillingResponseCode.OK && purchases != null) {
+            mUpdateProcessor.process(mCatalogue, purchases, System.currentTimeMillis());
+            scheduleSubsTimer();
+            if (isDebug) LogUtils.e("Payment success >>> [code："
+                    + billingResult.getResponseCode() + ",message：" + billingResult.getDebugMessage() + "]");
+        } else if (billingResult.getResponseCode() == BillingClient.BillingResponseCode.USER_CANCELED) {
+            // Handle an error caused by a user cancelling the purchase flow.
+            TraceUtils.beginSection("Billing:dispatch onPurchasesCancel");
+            for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                BaseBillingUpdateListener billingUpdatesListener = entry.get();
+                if (billingUpdatesListener == null) {
+                    continue;
+                }
+                billingUpdatesListener.onPurchasesCancel();
+            }
+            TraceUtils.endSection();
+            if (isDebug) LogUtils.e("Payment cancel >>> [code："
+                    + billingResult.getResponseCode() + ",message：" + billingResult.getDebugMessage() + "]");
+        } else {
+            // Handle any other error codes.
+            TraceUtils.beginSection("Billing:dispatch onPurchasesFailure");
+            for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                BaseBillingUpdateListener billingUpdatesListener = entry.get();
+                if (billingUpdatesListener == null) {
+                    continue;
+                }
+                billingUpdatesListener.onPurchasesFailure(billingResult.getResponseCode(), billingResult.getDebugMessage());
+            }
+            TraceUtils.endSection();
+            if (isDebug)
+                LogUtils.e("Payment failure >>> [code：" + billingResult.getResponseCode() + ",message：" + billingResult.getDebugMessage() + "]");
+        }
+        TraceUtils.endSection();
+    }
+
+    /**
+     * 对支付成功且未完成确认的订单进行消耗或确认，设置了服务端校验时先批量上传校验
+     *
+     * @param skuType 为null时通过sku获取商品类型
+     */
+    private void finalizePurchases(List<Purchase> purchases, @Nullable String skuType) {
+        SkuCatalogue catalogue = mCatalogue;
+        for (int i = 0, size = purchases.size(); i < size; i++) {
+            Purchase purchase = purchases.get(i);
+            byte kind = PurchaseClassifier.kindOf(catalogue, purchase.getSku(), skuType);
+            if (PurchaseClassifier.classify(kind, purchase.getPurchaseState(), purchase.isAcknowledged())
+                    != PurchaseClassifier.ACTION_NONE) {
+                mFinalizer.finalizePurchase(purchase, kind);
+            }
+        }
+        mFinalizer.flush();
+    }
+
+    /**
+     * 加入确认队列，按确认截止时间先后执行消耗或确认
+     */
+    private void finalizePurchase(String purchaseToken, String sku, String skuType, long purchaseTime) {
+        if (TYPE_INAPP.equals(skuType) || TYPE_SUBS.equals(skuType)) {
+            getAckScheduler().submit(purchaseToken, sku, skuType, purchaseTime);
+            postAckFlush();
+        }
+    }
+
+    private AcknowledgeScheduler getAckScheduler() {
+        if (mAckScheduler == null) {
+            File file = new File(mAppContext.getFilesDir(), "billing/pending_acknowledge.dat");
+            mAckScheduler = new AcknowledgeScheduler(file, getWorkExecutor(), new AcknowledgeScheduler.Finalizer() {
+                @Override
+                public void finalizePurchase(AcknowledgeScheduler.PendingPurchase purchase) {
+                    if (TYPE_INAPP.equals(purchase.getSkuType()) && !isPermanentProduct(purchase.getSku())) {
+                        consumeAsync(purchase.getPurchaseToken());
+                        if (isDebug) LogUtils.e("consumeAsync >>> [sku：" + purchase.getSku() + "]");
+                    } else {
+                        acknowledgePurchase(purchase.getPurchaseToken(), purchase.getSkuType());
+                        if (isDebug) LogUtils.e("acknowledgePurchase >>> [sku：" + purchase.getSku() + "]");
+                    }
+                }
+            });
+            mAckScheduler.setOnDeadlineApproachingListener(new AcknowledgeScheduler.OnDeadlineApproachingListener() {
+                @Override
+                public void onDeadlineApproaching(AcknowledgeScheduler.PendingPurchase purchase) {
+                    TraceUtils.beginSection("Billing:dispatch onAcknowledgeDeadlineApproaching");
+                    for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+                        BaseBillingUpdateListener billingUpdatesListener = entry.get();
+                        if (billingUpdatesListener == null) {
+                            continue;
+                        }
+                        billingUpdatesListener.onAcknowledgeDeadlineApproaching(purchase.getPurchaseToken(),
+                                purchase.getSku(), purchase.getDeadline());
+                    }
+                    TraceUtils.endSection();
+                    if (isDebug) LogUtils.e("acknowledge deadline approaching >>> [sku：" + purchase.getSku()
+                            + ",deadline：" + purchase.getDeadline() + "]");
+                }
+            });
+            // 在工作线程中读取，读取完成前提交的订单会与文件中的订单合并
+            final AcknowledgeScheduler scheduler = mAckScheduler;
+            scheduler.load(mMainExecutor, new Runnable() {
+                @Override
+                public void run() {
+                    if (mAckScheduler == scheduler) {
+                        scheduleAckAlarm();
+                    }
+                }
+            });
+        }
+        return mAckScheduler;
+    }
+
+    /**
+     * 消耗或确认的最终结果，成功或订单已不需要处理时从确认队列中移除
+     */
+    private void onFinalizeFinished(String purchaseToken, BillingResult billingResult) {
+        if (mAckScheduler == null) {
+            return;
+        }
+        int responseCode = billingResult.getResponseCode();
+        mAckScheduler.onFinished(purchaseToken, responseCode == BillingClient.BillingResponseCode.OK
+                || responseCode == BillingClient.BillingResponseCode.ITEM_NOT_OWNED);
+        if (!mAckPersistPosted) {
+            mAckPersistPosted = true;
+            mMainHandler.postDelayed(mAckPersist, ACK_PERSIST_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * 同一轮消息中加入的订单合并为一次flush，整批排序后再执行
+     */
+    private void postAckFlush() {
+        if (!mAckFlushPosted) {
+            mAckFlushPosted = true;
+            mMainHandler.post(mAckFlush);
+        }
+    }
+
+    /**
+     * 检查即将到达确认截止时间的订单，并在下一次需要检查的时间设置定时器
+     */
+    private void scheduleAckAlarm() {
+        mMainHandler.removeCallbacks(mAckAlarm);
+        if (mAckScheduler == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long next = mAckScheduler.checkDeadlines(now);
+        if (next != Long.MAX_VALUE) {
+            mMainHandler.postDelayed(mAckAlarm, Math.min(MAX_TIMER_DELAY_MILLIS, Math.max(0, next - now)));
+        }
+    }
+
+    /**
+     * 深度睡眠后定时器会延后，回到前台或网络恢复时按当前时间重新检查
+     */
+    private void checkTimeBasedState() {
+        scheduleAckAlarm();
+        advanceSubsIfDue();
+    }
+
+    private void onPurchaseVerified(PurchaseInfo purchaseInfo, boolean valid) {
+        if (valid) {
+            // 使用入队时确定的类型，旧版本写入的批次没有类型时再查目录
+            byte kind = PurchaseClassifier.kindOf(mCatalogue, purchaseInfo.getSku(), purchaseInfo.getSkuType());
+            finalizePurchase(purchaseInfo.getPurchaseToken(), purchaseInfo.getSku(),
+                    PurchaseClassifier.skuTypeOf(kind), purchaseInfo.getPurchaseTime());
+        }
+        TraceUtils.beginSection("Billing:dispatch onPurchaseVerified");
+        for (BillingListenerRegistry.Entry entry : mListeners.getEntries()) {
+            BaseBillingUpdateListener billingUpdatesListener = entry.get();
+            if (billingUpdatesListener == null) {
+                continue;
+            }
+            billingUpdatesListener.onPurchaseVerified(purchaseInfo, valid);
+        }
+        TraceUtils.endSection();
+        if (isDebug) LogUtils.e("purchase verified >>> [sku：" + purchaseInfo.getSku() + ",valid：" + valid + "]");
+    }
+
+    /**
+     * 只保留一个定时器，在下一次订阅状态转换时触发
+     */
+    private void scheduleSubsTimer() {
+        mMainHandler.removeCallbacks(mSubsTimer);
+        long next = mSubsEngine.getNextTransitionTime();
+        if (next != Long.MAX_VALUE) {
+            mMainHandler.postDelayed(mSubsTimer,
+                    Math.min(MAX_TIMER_DELAY_MILLIS, Math.max(0, next - System.currentTimeMillis())));
+        }
+    }
+
+    /**
+     * 按当前时间处理到期的订阅状态转换，并重新设置定时器
+     */
+    private void advanceSubs() {
+        if (mSubsEngine.advance(System.currentTimeMillis())) {
+            // 到达续订时间，查询一次确认是否已续订成功，查询结果中没有该订阅时才进入宽限期
+            confirmHistoryPurchase(TYPE_SUBS);
+        }
+        scheduleSubsTimer();
+    }
+
+    /**
+     * 定时器在深度睡眠后会延后，回到前台时按当前时间补上已到期的转换
+     */
+    private void advanceSubsIfDue() {
+        if (mSubsEngine.getNextTransitionTime() <= System.currentTimeMillis()) {
+            advanceSubs();
+        }
+    }
+
+    /**
+     * 通过sku获取商品类型(订阅获取内购)
+     *
+     * @param sku sku
+     * @return inapp内购，subs订阅
+     */
+    public String getSkuType(String sku) {
+        return mCatalogue.getSkuType(sku);
+    }
+
+    private boolean isPermanentProduct(String sku) {
+        return mCatalogue.isPermanent(sku);
+    }
+
+    /**
+     * google内购服务是否已经准备好
+     *
+     * @return boolean
+     */
+    public boolean isReady() {
+        return mBillingClient != null && mBillingClient.isReady();
+    }
+
+    /**
+     * 断开连接google服务
+     * 注意！！！一般情况不建议调用该方法，让google保留连接是最好的选择。
+     */
+    public void endConnection() {
+        //注意！！！一般情况不建议调用该方法，让google保留连接是最好的选择。
+        if (mBillingClient != null) {
+            if (mBillingClient.isReady()) {
+                mBillingClient.endConnection();
+                mBillingClient = null;
+            }
+        }
+    }
+
+    /**
+     * 回收资源,退出应用调用
+     */
+    public void destroy() {
+        if (isDebug) LogUtils.d("Destroying the manager.");
+        mListeners.clear();
+        mPendingRequests.clear();
+        mScheduler.clear();
+        mMainHandler.removeCallbacks(mDrainRunnable);
+        mMainHandler.removeCallbacksAndMessages(RETRY_TOKEN);
+        mMainHandler.removeCallbacks(mAckAlarm);
+        mMainHandler.removeCallbacks(mAckFlush);
+        mMainHandler.removeCallbacks(mAckPersist);
+        mAckFlushPosted = false;
+        mAckPersistPosted = false;
+        if (mAckScheduler != null) {
+            mAckScheduler.persist();
+            mAckScheduler = null;
+        }
+        if (mConnectivityMonitor != null) {
+            mConnectivityMonitor.removeListener(mConnectivityListener);
+            mConnectivityMonitor = null;
+        }
+        mMainHandler.removeCallbacks(mSubsTimer);
+        mSubsEngine.clear();
+        mEntitlementStore.clear();
+        mCatalogue = SkuCatalogue.EMPTY;
+        mStringPool.clear();
+    }
+
+}
\ No newline at end of file
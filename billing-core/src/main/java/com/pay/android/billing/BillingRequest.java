@@ -0,0 +1,135 @@
+package com.pay.android.billing;
+
+import android.os.Handler;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 一次结算请求的句柄，用于设置超时和取消
+ * <p>
+ * 请求结束(完成、取消或超时)后状态不再改变，之后Google Play的回调会被忽略。
+ * 取消或超时时会释放请求占用的资源：从等待连接和限流队列中移除、取消重试，消耗/确认会让出并发名额。
+ * 超时会回调{@link com.pay.android.billing.listener.BaseBillingUpdateListener#onRequestTimeout(BillingRequest)}，取消不会回调。
+ * <p>
+ * 需要在主线程调用
+ */
+public final class BillingRequest {
+
+    public static final int STATE_ACTIVE = 0;
+    public static final int STATE_COMPLETED = 1;
+    public static final int STATE_CANCELLED = 2;
+    public static final int STATE_TIMED_OUT = 3;
+
+    /**
+     * 请求被取消或超时时释放资源
+     */
+    interface OnAbandonedListener {
+        void onAbandoned(BillingRequest request);
+    }
+
+    interface OnTimeoutListener {
+        void onTimeout(BillingRequest request);
+    }
+
+    private final String operation;
+    private final Handler handler;
+    private final OnTimeoutListener timeoutListener;
+    private OnAbandonedListener abandonedListener;
+    private int state = STATE_ACTIVE;
+    private final Runnable timeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (finish(STATE_TIMED_OUT)) {
+                timeoutListener.onTimeout(BillingRequest.this);
+            }
+        }
+    };
+
+    BillingRequest(String operation, Handler handler, OnTimeoutListener timeoutListener) {
+        this.operation = operation;
+        this.handler = handler;
+        this.timeoutListener = timeoutListener;
+    }
+
+    /**
+     * 请求名称，如consume、querySkuDetails
+     */
+    @NonNull
+    public String getOperation() {
+        return operation;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public boolean isActive() {
+        return state == STATE_ACTIVE;
+    }
+
+    public boolean isCancelled() {
+        return state == STATE_CANCELLED;
+    }
+
+    public boolean isTimedOut() {
+        return state == STATE_TIMED_OUT;
+    }
+
+    /**
+     * 设置超时时间，从调用时开始计时，会覆盖{@link BillingManager#setDefaultRequestTimeout(long)}。
+     * 请求已结束时无效
+     *
+     * @param timeoutMillis 小于等于0表示不超时
+     */
+    @NonNull
+    public BillingRequest withTimeout(long timeoutMillis) {
+        if (state == STATE_ACTIVE) {
+            handler.removeCallbacks(timeoutRunnable);
+            if (timeoutMillis > 0) {
+                handler.postDelayed(timeoutRunnable, timeoutMillis);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 取消请求，已发出的请求无法撤回，但之后的回调会被忽略
+     *
+     * @return 请求是否仍在进行中
+     */
+    public boolean cancel() {
+        return finish(STATE_CANCELLED);
+    }
+
+    void setOnAbandonedListener(OnAbandonedListener listener) {
+        this.abandonedListener = listener;
+    }
+
+    /**
+     * 收到Google Play的结果
+     *
+     * @return false表示请求已被取消或超时，需要忽略结果
+     */
+    boolean complete() {
+        return finish(STATE_COMPLETED);
+    }
+
+    private boolean finish(int newState) {
+        if (state != STATE_ACTIVE) {
+            return false;
+        }
+        state = newState;
+        handler.removeCallbacks(timeoutRunnable);
+        OnAbandonedListener listener = abandonedListener;
+        abandonedListener = null;
+        if (newState != STATE_COMPLETED && listener != null) {
+            listener.onAbandoned(this);
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "BillingRequest{" + operation + ", state=" + state + "}";
+    }
+}
@@ -0,0 +1,89 @@
+package com.pay.android.billing;
+
+import com.android.billingclient.api.Purchase;
+import com.pay.android.billing.catalogue.PurchaseClassifier;
+import com.pay.android.billing.catalogue.SkuCatalogue;
+import com.pay.android.billing.entitlement.EntitlementStore;
+import com.pay.android.billing.listener.BaseBillingUpdateListener;
+import com.pay.android.billing.listener.BillingListenerRegistry;
+import com.pay.android.billing.subs.SubscriptionEntitlementEngine;
+import com.pay.android.billing.utils.LogUtils;
+import com.pay.android.billing.utils.TraceUtils;
+
+import java.util.List;
+
+/**
+ * onPurchasesUpdated的处理过程：每个订单只查一次目录得到商品种类，权益更新与消耗/确认判断共用这个种类，
+ * 需要消耗或确认的订单交给{@link Finalizer}，最后分发给监听
+ * <p>
+ * 所有处理对象在创建时确定并复用。已处理过的订单(已确认、权益不变)从分类到分发都不分配对象，
+ * 恢复购买时大量重复回调的订单不会产生GC压力；需要消耗或确认的订单仍会创建请求对象。
+ * <p>
+ * 非线程安全，需要在同一线程（主线程）调用
+ */
+final class PurchaseUpdateProcessor {
+
+    /**
+     * 需要消耗或确认的订单，一批订单处理完成后调用{@link #flush()}
+     */
+    interface Finalizer {
+        void finalizePurchase(Purchase purchase, byte kind);
+
+        /**
+         * 一批订单处理完成，如批量上传服务端校验
+         */
+        void flush();
+    }
+
+    private final BillingListenerRegistry listeners;
+    private final SubscriptionEntitlementEngine subsEngine;
+    private final EntitlementStore entitlementStore;
+    private final Finalizer finalizer;
+    private boolean debug;
+
+    PurchaseUpdateProcessor(BillingListenerRegistry listeners, SubscriptionEntitlementEngine subsEngine,
+                            EntitlementStore entitlementStore, Finalizer finalizer) {
+        this.listeners = listeners;
+        this.subsEngine = subsEngine;
+        this.entitlementStore = entitlementStore;
+        this.finalizer = finalizer;
+    }
+
+    void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    /**
+     * 处理一批购买更新并分发给监听
+     */
+    void process(SkuCatalogue catalogue, List<Purchase> purchases, long now) {
+        for (int i = 0, size = purchases.size(); i < size; i++) {
+            Purchase purchase = purchases.get(i);
+            byte kind = catalogue.getKind(purchase.getSku());
+            if (kind == SkuCatalogue.KIND_SUBS) {
+                subsEngine.onPurchase(purchase, now);
+            } else if (kind != 0) {
+                entitlementStore.onInappPurchase(purchase);
+            }
+            int purchaseState = purchase.getPurchaseState();
+            if (purchaseState == Purchase.PurchaseState.PENDING) {
+                if (debug) LogUtils.e("待处理的订单:" + purchase.getSku());
+            }
+            //商品状态为支付成功，才会进行消耗与确认的操作
+            if (PurchaseClassifier.classify(kind, purchaseState, purchase.isAcknowledged())
+                    != PurchaseClassifier.ACTION_NONE) {
+                finalizer.finalizePurchase(purchase, kind);
+            }
+        }
+        finalizer.flush();
+        TraceUtils.beginSection("Billing:dispatch onPurchasesUpdated");
+        for (BillingListenerRegistry.Entry entry : listeners.getEntries()) {
+            BaseBillingUpdateListener billingUpdatesListener = entry.get();
+            if (billingUpdatesListener == null) {
+                continue;
+            }
+            billingUpdatesListener.onPurchasesUpdated(purchases);
+        }
+        TraceUtils.endSection();
+    }
+}
@@ -0,0 +1,376 @@
+package com.pay.android.billing.ack;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * 按确认截止时间排序的消耗/确认调度
+ * <p>
+ * Google Play要求在购买后3天内完成确认，否则自动退款。所有待确认的订单按purchaseTime + 3天排序，
+ * 截止时间最近的先执行，同时执行的请求数不超过maxInFlight，保证在限流或网络不好时优先处理最紧急的订单。
+ * 队列会持久化到文件中，应用重启后继续处理。
+ * <p>
+ * {@link #submit}只加入队列，一批订单全部加入后调用{@link #flush()}，整批按截止时间排序后再开始执行，
+ * 并且只写一次文件，文件的读写都在ioExecutor中执行。
+ * <p>
+ * {@link #load}完成前也可以提交订单，读取的订单会与已提交的订单合并，合并前不会写文件，避免覆盖未读取的记录。
+ * <p>
+ * 非线程安全，需要在同一线程（主线程）调用
+ */
+public class AcknowledgeScheduler {
+
+    public static final long ACKNOWLEDGE_WINDOW_MILLIS = 3L * 24 * 60 * 60 * 1000;
+    public static final long DEFAULT_ALARM_BEFORE_DEADLINE_MILLIS = 24L * 60 * 60 * 1000;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 3;
+
+    private static final int FILE_VERSION = 2;
+    // 版本1没有保存是否已提醒
+    private static final int FILE_VERSION_NO_ALARM = 1;
+
+    /**
+     * 执行消耗或确认，完成后需要调用{@link #onFinished(String, boolean)}
+     */
+    public interface Finalizer {
+        void finalizePurchase(PendingPurchase purchase);
+    }
+
+    public interface OnDeadlineApproachingListener {
+        void onDeadlineApproaching(PendingPurchase purchase);
+    }
+
+    public static final class PendingPurchase {
+        private final String purchaseToken;
+        private final String sku;
+        private final String skuType;
+        private final long purchaseTime;
+        boolean alarmed;
+
+        PendingPurchase(String purchaseToken, String sku, String skuType, long purchaseTime, boolean alarmed) {
+            this.purchaseToken = purchaseToken;
+            this.sku = sku;
+            this.skuType = skuType;
+            this.purchaseTime = purchaseTime;
+            this.alarmed = alarmed;
+        }
+
+        public String getPurchaseToken() {
+            return purchaseToken;
+        }
+
+        public String getSku() {
+            return sku;
+        }
+
+        public String getSkuType() {
+            return skuType;
+        }
+
+        public long getPurchaseTime() {
+            return purchaseTime;
+        }
+
+        /**
+         * 确认截止时间，超过后Google Play会自动退款
+         */
+        public long getDeadline() {
+            return purchaseTime + ACKNOWLEDGE_WINDOW_MILLIS;
+        }
+    }
+
+    private final File file;
+    private final Executor ioExecutor;
+    private final Finalizer finalizer;
+    private final Map<String, PendingPurchase> pending = new HashMap<>();
+    private final PriorityQueue<PendingPurchase> queue = new PriorityQueue<>(11, new Comparator<PendingPurchase>() {
+        @Override
+        public int compare(PendingPurchase o1, PendingPurchase o2) {
+            return Long.compare(o1.getDeadline(), o2.getDeadline());
+        }
+    });
+    private final Map<String, PendingPurchase> inFlight = new HashMap<>();
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private long alarmBeforeDeadlineMillis = DEFAULT_ALARM_BEFORE_DEADLINE_MILLIS;
+    private OnDeadlineApproachingListener deadlineListener;
+    // 队列有变化但还没有写入文件
+    private boolean dirty;
+    // 正在读取文件，读取完成前不写文件
+    private boolean loading;
+
+    /**
+     * @param file       队列持久化文件
+     * @param ioExecutor 读写文件的线程，需要按提交顺序执行
+     * @param finalizer  执行消耗或确认
+     */
+    public AcknowledgeScheduler(File file, Executor ioExecutor, Finalizer finalizer) {
+        this.file = file;
+        this.ioExecutor = ioExecutor;
+        this.finalizer = finalizer;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * 距离截止时间多久时触发提醒
+     */
+    public void setAlarmBeforeDeadlineMillis(long alarmBeforeDeadlineMillis) {
+        this.alarmBeforeDeadlineMillis = alarmBeforeDeadlineMillis;
+    }
+
+    public void setOnDeadlineApproachingListener(OnDeadlineApproachingListener listener) {
+        this.deadlineListener = listener;
+    }
+
+    /**
+     * 加入待确认队列，已在队列中的订单不会重复加入。不会立即执行，需要调用{@link #flush()}
+     *
+     * @return 是否加入了队列
+     */
+    public boolean submit(String purchaseToken, String sku, String skuType, long purchaseTime) {
+        if (pending.containsKey(purchaseToken)) {
+            return false;
+        }
+        PendingPurchase purchase = new PendingPurchase(purchaseToken, sku, skuType, purchaseTime, false);
+        pending.put(purchaseToken, purchase);
+        queue.add(purchase);
+        dirty = true;
+        return true;
+    }
+
+    /**
+     * 保存队列的变化，并按截止时间先后执行已加入的订单
+     */
+    public void flush() {
+        persist();
+        dispatch();
+    }
+
+    /**
+     * 队列有变化时在ioExecutor中写入文件，正在读取文件时推迟到读取完成后
+     */
+    public void persist() {
+        if (dirty && !loading) {
+            dirty = false;
+            save();
+        }
+    }
+
+    /**
+     * 消耗或确认完成，继续执行下一个订单。队列的变化在下一次{@link #flush()}或{@link #persist()}时保存
+     *
+     * @param success 成功或订单已不需要处理，从队列中移除；失败则保留在队列中等待{@link #resume()}
+     */
+    public void onFinished(String purchaseToken, boolean success) {
+        PendingPurchase purchase = inFlight.remove(purchaseToken);
+        if (purchase == null) {
+            return;
+        }
+        if (success) {
+            pending.remove(purchaseToken);
+            dirty = true;
+        }
+        dispatch();
+    }
+
+    /**
+     * 重新执行所有未完成的订单，如连接Google Play成功后
+     */
+    public void resume() {
+        queue.clear();
+        for (PendingPurchase purchase : pending.values()) {
+            if (!inFlight.containsKey(purchase.getPurchaseToken())) {
+                queue.add(purchase);
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * 检查即将到达截止时间的订单，每个订单只提醒一次，提醒状态随队列保存，应用重启后不会重复提醒。
+     * <p>
+     * 超过截止时间的订单不会移除：pending订单的3天期限从变为已支付时才开始计算，本地时钟也可能不准，
+     * 只有Google Play的结果（成功或ITEM_NOT_OWNED）才能把订单移出队列。这些订单的截止时间最早，会排在队列最前面
+     *
+     * @return 下一次需要检查的时间，没有则返回{@link Long#MAX_VALUE}
+     */
+    public long checkDeadlines(long now) {
+        long next = Long.MAX_VALUE;
+        boolean changed = false;
+        for (PendingPurchase purchase : pending.values()) {
+            if (purchase.alarmed) {
+                continue;
+            }
+            long alarmAt = purchase.getDeadline() - alarmBeforeDeadlineMillis;
+            if (alarmAt <= now) {
+                purchase.alarmed = true;
+                changed = true;
+                if (deadlineListener != null) {
+                    deadlineListener.onDeadlineApproaching(purchase);
+                }
+            } else {
+                next = Math.min(next, alarmAt);
+            }
+        }
+        if (changed) {
+            dirty = true;
+            persist();
+        }
+        return next;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 在ioExecutor中读取保存的队列，读取完成后在callbackExecutor中与已提交的订单合并，
+     * 保存合并结果并开始执行，最后回调onLoaded
+     *
+     * @param callbackExecutor 调用本类的线程（主线程）
+     * @param onLoaded         合并完成后回调，可以为null
+     */
+    public void load(final Executor callbackExecutor, final Runnable onLoaded) {
+        loading = true;
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<PendingPurchase> loaded;
+                try {
+                    loaded = read();
+                } catch (IOException e) {
+                    loaded = Collections.emptyList();
+                }
+                final List<PendingPurchase> result = loaded;
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        merge(result);
+                        if (onLoaded != null) {
+                            onLoaded.run();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void merge(List<PendingPurchase> loaded) {
+        loading = false;
+        for (PendingPurchase purchase : loaded) {
+            PendingPurchase submitted = pending.get(purchase.getPurchaseToken());
+            if (submitted != null) {
+                // 读取完成前已重新提交，保留已提醒的状态
+                submitted.alarmed |= purchase.alarmed;
+                continue;
+            }
+            pending.put(purchase.getPurchaseToken(), purchase);
+            queue.add(purchase);
+        }
+        // 读取期间推迟的修改一起保存
+        persist();
+        dispatch();
+    }
+
+    private List<PendingPurchase> read() throws IOException {
+        List<PendingPurchase> loaded = new ArrayList<>();
+        if (!file.exists()) {
+            return loaded;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            int version = in.readInt();
+            if (version != FILE_VERSION && version != FILE_VERSION_NO_ALARM) {
+                return loaded;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String token = in.readUTF();
+                String sku = in.readUTF();
+                String skuType = in.readUTF();
+                long purchaseTime = in.readLong();
+                boolean alarmed = version != FILE_VERSION_NO_ALARM && in.readBoolean();
+                loaded.add(new PendingPurchase(token, sku, skuType, purchaseTime, alarmed));
+            }
+        } finally {
+            in.close();
+        }
+        return loaded;
+    }
+
+    private void dispatch() {
+        PendingPurchase purchase;
+        while (inFlight.size() < maxInFlight && (purchase = queue.poll()) != null) {
+            if (!pending.containsKey(purchase.getPurchaseToken())) {
+                continue;
+            }
+            inFlight.put(purchase.getPurchaseToken(), purchase);
+            finalizer.finalizePurchase(purchase);
+        }
+    }
+
+    private void save() {
+        // 在调用线程中复制，文件在ioExecutor中写入
+        final String[] tokens = new String[pending.size()];
+        final String[] skus = new String[tokens.length];
+        final String[] skuTypes = new String[tokens.length];
+        final long[] purchaseTimes = new long[tokens.length];
+        final boolean[] alarmed = new boolean[tokens.length];
+        int i = 0;
+        for (PendingPurchase purchase : pending.values()) {
+            tokens[i] = purchase.getPurchaseToken();
+            skus[i] = purchase.getSku() == null ? "" : purchase.getSku();
+            skuTypes[i] = purchase.getSkuType() == null ? "" : purchase.getSkuType();
+            purchaseTimes[i] = purchase.getPurchaseTime();
+            alarmed[i] = purchase.alarmed;
+            i++;
+        }
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(tokens, skus, skuTypes, purchaseTimes, alarmed);
+            }
+        });
+    }
+
+    private void write(String[] tokens, String[] skus, String[] skuTypes, long[] purchaseTimes, boolean[] alarmed) {
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(FILE_VERSION);
+                out.writeInt(tokens.length);
+                for (int i = 0; i < tokens.length; i++) {
+                    out.writeUTF(tokens[i]);
+                    out.writeUTF(skus[i]);
+                    out.writeUTF(skuTypes[i]);
+                    out.writeLong(purchaseTimes[i]);
+                    out.writeBoolean(alarmed[i]);
+                }
+            } finally {
+                out.close();
+            }
+            tmp.renameTo(file);
+        } catch (IOException e) {
+            tmp.delete();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.pay.android.billing.catalogue;
+
+import com.android.billingclient.api.BillingClient;
+import com.android.billingclient.api.Purchase;
+
+/**
+ * 购买更新热路径上的订单分类
+ * <p>
+ * 每个订单只查一次目录得到商品种类，之后的实体权益更新和消耗/确认判断都复用这个种类，
+ * 只做基本类型运算，不分配对象
+ */
+public final class PurchaseClassifier {
+
+    /**
+     * 不需要处理：非已支付状态、已确认的永久性商品或订阅、目录中不存在的sku
+     */
+    public static final int ACTION_NONE = 0;
+    /**
+     * 需要消耗
+     */
+    public static final int ACTION_CONSUME = 1;
+    /**
+     * 需要确认
+     */
+    public static final int ACTION_ACKNOWLEDGE = 2;
+
+    private PurchaseClassifier() {
+    }
+
+    /**
+     * 商品种类，优先使用目录中的种类；目录中不存在时按指定的商品类型取默认种类，
+     * 与{@link BillingClient.SkuType#INAPP}查询结果中的未知sku按消耗型处理保持一致
+     *
+     * @param skuType 已知的商品类型，为null时只查目录
+     * @return {@link SkuCatalogue#KIND_ONE_TIME}等，未知时返回0
+     */
+    public static byte kindOf(SkuCatalogue catalogue, String sku, String skuType) {
+        byte kind = catalogue.getKind(sku);
+        if (skuType == null) {
+            return kind;
+        }
+        if (BillingClient.SkuType.SUBS.equals(skuType)) {
+            return SkuCatalogue.KIND_SUBS;
+        }
+        if (BillingClient.SkuType.INAPP.equals(skuType)) {
+            return kind == SkuCatalogue.KIND_PERMANENT ? kind : SkuCatalogue.KIND_ONE_TIME;
+        }
+        return 0;
+    }
+
+    /**
+     * @param kind          {@link #kindOf}得到的商品种类
+     * @param purchaseState {@link Purchase.PurchaseState}
+     * @return {@link #ACTION_NONE}、{@link #ACTION_CONSUME}或{@link #ACTION_ACKNOWLEDGE}
+     */
+    public static int classify(byte kind, int purchaseState, boolean acknowledged) {
+        if (purchaseState != Purchase.PurchaseState.PURCHASED) {
+            return ACTION_NONE;
+        }
+        switch (kind) {
+            case SkuCatalogue.KIND_ONE_TIME:
+                // 消耗型商品每次都需要消耗
+                return ACTION_CONSUME;
+            case SkuCatalogue.KIND_PERMANENT:
+            case SkuCatalogue.KIND_SUBS:
+                return acknowledged ? ACTION_NONE : ACTION_ACKNOWLEDGE;
+            default:
+                return ACTION_NONE;
+        }
+    }
+
+    /**
+     * @return {@link BillingClient.SkuType}，未知种类返回null
+     */
+    public static String skuTypeOf(byte kind) {
+        switch (kind) {
+            case SkuCatalogue.KIND_ONE_TIME:
+            case SkuCatalogue.KIND_PERMANENT:
+                return BillingClient.SkuType.INAPP;
+            case SkuCatalogue.KIND_SUBS:
+                return BillingClient.SkuType.SUBS;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.pay.android.billing.catalogue;
+
+import com.android.billingclient.api.BillingClient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 不可变的商品目录
+ * <p>
+ * 每个sku分配一个从0开始的int id，按id保存商品种类，{@link #getSkuType(String)}和{@link #isPermanent(String)}为O(1)。
+ * 目录不可变，更新时整体替换，读取时不需要加锁
+ */
+public final class SkuCatalogue {
+
+    /**
+     * 一次性内购(消耗型)
+     */
+    public static final byte KIND_ONE_TIME = 1;
+    /**
+     * 永久性内购(非消耗型)
+     */
+    public static final byte KIND_PERMANENT = 2;
+    /**
+     * 订阅
+     */
+    public static final byte KIND_SUBS = 3;
+
+    public static final SkuCatalogue EMPTY = new Builder().build();
+
+    private final long version;
+    private final String[] skus;
+    private final byte[] kinds;
+    private final Map<String, Integer> ids;
+
+    private SkuCatalogue(long version, String[] skus, byte[] kinds) {
+        this.version = version;
+        this.skus = skus;
+        this.kinds = kinds;
+        this.ids = new HashMap<>(skus.length * 4 / 3 + 1);
+        for (int i = 0; i < skus.length; i++) {
+            ids.put(skus[i], i);
+        }
+    }
+
+    /**
+     * 目录版本，只有更高版本的目录才能替换当前目录
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return skus.length;
+    }
+
+    /**
+     * @return sku在目录中的id，不存在时返回-1
+     */
+    public int getId(String sku) {
+        Integer id = sku == null ? null : ids.get(sku);
+        return id == null ? -1 : id;
+    }
+
+    public String getSku(int id) {
+        return skus[id];
+    }
+
+    /**
+     * @return 商品种类，不存在时返回0
+     */
+    public byte getKind(String sku) {
+        int id = getId(sku);
+        return id < 0 ? 0 : kinds[id];
+    }
+
+    public byte getKind(int id) {
+        return kinds[id];
+    }
+
+    /**
+     * @return {@link BillingClient.SkuType}，不存在时返回null
+     */
+    public String getSkuType(String sku) {
+        return PurchaseClassifier.skuTypeOf(getKind(sku));
+    }
+
+    public boolean isPermanent(String sku) {
+        return getKind(sku) == KIND_PERMANENT;
+    }
+
+    /**
+     * 某一种类的所有sku，按id顺序
+     */
+    public List<String> getSkus(byte kind) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < skus.length; i++) {
+            if (kinds[i] == kind) {
+                result.add(skus[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 替换某一种类的所有sku，版本不变
+     */
+    public SkuCatalogue withKind(byte kind, String[] newSkus) {
+        Builder builder = new Builder().setVersion(version);
+        for (int i = 0; i < skus.length; i++) {
+            if (kinds[i] != kind) {
+                builder.add(skus[i], kinds[i]);
+            }
+        }
+        for (String sku : newSkus) {
+            builder.add(sku, kind);
+        }
+        return builder.build();
+    }
+
+    public static final class Builder {
+        private long version;
+        // 重复的sku以最后一次为准，保持首次加入的顺序
+        private final Map<String, Byte> entries = new LinkedHashMap<>();
+
+        public Builder setVersion(long version) {
+            this.version = version;
+            return this;
+        }
+
+        public Builder add(String sku, byte kind) {
+            if (kind < KIND_ONE_TIME || kind > KIND_SUBS) {
+                throw new IllegalArgumentException("unknown sku kind " + kind + " for " + sku);
+            }
+            if (sku != null && !sku.isEmpty()) {
+                entries.put(sku, kind);
+            }
+            return this;
+        }
+
+        public SkuCatalogue build() {
+            String[] skus = new String[entries.size()];
+            byte[] kinds = new byte[entries.size()];
+            int i = 0;
+            for (Map.Entry<String, Byte> entry : entries.entrySet()) {
+                skus[i] = entry.getKey();
+                kinds[i] = entry.getValue();
+                i++;
+            }
+            return new SkuCatalogue(version, skus, kinds);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.pay.android.billing.catalogue;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * 商品目录文件的读写
+ * <p>
+ * 文件格式(大端序)：
+ * <pre>
+ * int   magic    'BCAT'
+ * short format   文件格式版本，当前为1
+ * long  version  目录版本
+ * int   count
+ * count * { byte kind, short length, byte[length] sku(UTF-8) }
+ * </pre>
+ * 通过内存映射读取，不需要把整个文件复制到Java堆中。assets中的目录文件需要不压缩打包
+ * (aaptOptions { noCompress 'bcat' })，否则只能退化为流式读取
+ */
+public class SkuCatalogueLoader {
+
+    public static final int MAGIC = 0x42434154;
+    public static final int FORMAT_VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 读取本地文件，如下载的目录
+     */
+    public static SkuCatalogue load(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 读取assets中的目录文件
+     */
+    public static SkuCatalogue loadAsset(AssetManager assets, String fileName) throws IOException {
+        AssetFileDescriptor afd;
+        try {
+            afd = assets.openFd(fileName);
+        } catch (FileNotFoundException e) {
+            // 压缩打包的文件无法获取文件描述符
+            return parse(ByteBuffer.wrap(readFully(assets.open(fileName))));
+        }
+        try {
+            FileInputStream in = afd.createInputStream();
+            try {
+                return parse(in.getChannel().map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength()));
+            } finally {
+                in.close();
+            }
+        } finally {
+            afd.close();
+        }
+    }
+
+    public static SkuCatalogue parse(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("not a sku catalogue");
+            }
+            int format = buffer.getShort();
+            if (format != FORMAT_VERSION) {
+                throw new IOException("unsupported catalogue format " + format);
+            }
+            SkuCatalogue.Builder builder = new SkuCatalogue.Builder().setVersion(buffer.getLong());
+            int count = buffer.getInt();
+            if (count < 0) {
+                throw new IOException("corrupt sku catalogue");
+            }
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < count; i++) {
+                byte kind = buffer.get();
+                int length = buffer.getShort() & 0xFFFF;
+                if (length > bytes.length) {
+                    bytes = new byte[length];
+                }
+                buffer.get(bytes, 0, length);
+                builder.add(new String(bytes, 0, length, UTF_8), kind);
+            }
+            return builder.build();
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("corrupt sku catalogue", e);
+        }
+    }
+
+    /**
+     * 写入目录文件，用于生成assets或服务端下发的目录
+     */
+    public static void write(SkuCatalogue catalogue, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(FORMAT_VERSION);
+        data.writeLong(catalogue.getVersion());
+        data.writeInt(catalogue.size());
+        for (int i = 0; i < catalogue.size(); i++) {
+            byte[] sku = catalogue.getSku(i).getBytes(UTF_8);
+            if (sku.length > 0xFFFF) {
+                throw new IOException("sku too long: " + catalogue.getSku(i));
+            }
+            data.writeByte(catalogue.getKind(i));
+            data.writeShort(sku.length);
+            data.write(sku);
+        }
+        data.flush();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.pay.android.billing.entitlement;
+
+/**
+ * 权益快照观察者
+ */
+public interface EntitlementObserver {
+
+    /**
+     * 权益发生变化，同一帧内的多次变化只回调一次最新的快照。在主线程回调
+     */
+    void onEntitlementChanged(EntitlementSnapshot snapshot);
+}
@@ -0,0 +1,98 @@
+package com.pay.android.billing.entitlement;
+
+import com.pay.android.billing.subs.SubscriptionState;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 某一时刻的用户权益，不可变
+ */
+public final class EntitlementSnapshot {
+
+    public static final EntitlementSnapshot EMPTY = new EntitlementSnapshot(0,
+            Collections.<String>emptySet(), Collections.<String>emptySet(),
+            Collections.<String, SubscriptionState>emptyMap());
+
+    private final long version;
+    private final Set<String> ownedInappSkus;
+    private final Set<String> pendingInappSkus;
+    private final Map<String, SubscriptionState> subscriptionStates;
+    private final boolean subscriptionEntitled;
+
+    EntitlementSnapshot(long version, Set<String> ownedInappSkus, Set<String> pendingInappSkus,
+                        Map<String, SubscriptionState> subscriptionStates) {
+        this.version = version;
+        this.ownedInappSkus = Collections.unmodifiableSet(new HashSet<>(ownedInappSkus));
+        this.pendingInappSkus = Collections.unmodifiableSet(new HashSet<>(pendingInappSkus));
+        this.subscriptionStates = Collections.unmodifiableMap(new HashMap<>(subscriptionStates));
+        boolean entitled = false;
+        for (SubscriptionState state : subscriptionStates.values()) {
+            if (state.isEntitled()) {
+                entitled = true;
+                break;
+            }
+        }
+        this.subscriptionEntitled = entitled;
+    }
+
+    /**
+     * 快照版本，每次发布新快照时递增
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 是否拥有该商品，内购商品已购买或订阅处于有效期、宽限期
+     */
+    public boolean isEntitled(String sku) {
+        if (ownedInappSkus.contains(sku)) {
+            return true;
+        }
+        SubscriptionState state = subscriptionStates.get(sku);
+        return state != null && state.isEntitled();
+    }
+
+    /**
+     * 是否有处于有效期或宽限期的订阅
+     */
+    public boolean hasActiveSubscription() {
+        return subscriptionEntitled;
+    }
+
+    /**
+     * 已购买的内购商品，消耗型商品消耗后不再包含
+     */
+    public Set<String> getOwnedInappSkus() {
+        return ownedInappSkus;
+    }
+
+    /**
+     * 待付款完成的内购商品
+     */
+    public Set<String> getPendingInappSkus() {
+        return pendingInappSkus;
+    }
+
+    public Map<String, SubscriptionState> getSubscriptionStates() {
+        return subscriptionStates;
+    }
+
+    boolean sameContent(Set<String> owned, Set<String> pending, Map<String, SubscriptionState> subscriptions) {
+        return ownedInappSkus.equals(owned) && pendingInappSkus.equals(pending) && subscriptionStates.equals(subscriptions);
+    }
+
+    @Override
+    public String toString() {
+        return "EntitlementSnapshot{" +
+                "version=" + version +
+                ", ownedInappSkus=" + ownedInappSkus +
+                ", pendingInappSkus=" + pendingInappSkus +
+                ", subscriptionStates=" + subscriptionStates +
+                '}';
+    }
+}
@@ -0,0 +1,145 @@
+package com.pay.android.billing.entitlement;
+
+import com.android.billingclient.api.Purchase;
+import com.pay.android.billing.subs.SubscriptionState;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 维护当前权益并发布{@link EntitlementSnapshot}
+ * <p>
+ * 每次变化只标记为dirty并通过{@link FrameScheduler}请求一次发布，同一帧内的多次变化合并成一次计算与回调，
+ * 观察者只会收到最新的快照
+ * <p>
+ * 非线程安全，需要在同一线程（主线程）调用
+ */
+public class EntitlementStore {
+
+    public interface FrameScheduler {
+        /**
+         * 在下一帧执行发布
+         */
+        void scheduleFrame(Runnable publish);
+    }
+
+    private final FrameScheduler frameScheduler;
+    private final CopyOnWriteArrayList<EntitlementObserver> observers = new CopyOnWriteArrayList<>();
+    // purchaseToken -> sku
+    private final Map<String, String> ownedInapp = new HashMap<>();
+    private final Map<String, String> pendingInapp = new HashMap<>();
+    private final Map<String, SubscriptionState> subscriptions = new HashMap<>();
+    private EntitlementSnapshot snapshot = EntitlementSnapshot.EMPTY;
+    private boolean dirty;
+    private boolean scheduled;
+
+    private final Runnable publishRunnable = new Runnable() {
+        @Override
+        public void run() {
+            publish();
+        }
+    };
+
+    public EntitlementStore(FrameScheduler frameScheduler) {
+        this.frameScheduler = frameScheduler;
+    }
+
+    /**
+     * 注册后立即收到当前快照
+     */
+    public void addObserver(EntitlementObserver observer) {
+        if (observers.addIfAbsent(observer)) {
+            observer.onEntitlementChanged(snapshot);
+        }
+    }
+
+    public void removeObserver(EntitlementObserver observer) {
+        observers.remove(observer);
+    }
+
+    public EntitlementSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 使用queryPurchases(INAPP)的全量结果同步内购商品
+     */
+    public void syncInapp(List<Purchase> purchases) {
+        ownedInapp.clear();
+        pendingInapp.clear();
+        if (purchases != null) {
+            for (Purchase purchase : purchases) {
+                putInapp(purchase);
+            }
+        }
+        invalidate();
+    }
+
+    public void onInappPurchase(Purchase purchase) {
+        putInapp(purchase);
+        invalidate();
+    }
+
+    /**
+     * 消耗型商品消耗成功
+     */
+    public void onConsumed(String purchaseToken) {
+        if (ownedInapp.remove(purchaseToken) != null) {
+            invalidate();
+        }
+    }
+
+    public void onSubscriptionStateChanged(String sku, SubscriptionState state) {
+        subscriptions.put(sku, state);
+        invalidate();
+    }
+
+    public void clear() {
+        ownedInapp.clear();
+        pendingInapp.clear();
+        subscriptions.clear();
+        invalidate();
+    }
+
+    private void putInapp(Purchase purchase) {
+        String token = purchase.getPurchaseToken();
+        if (purchase.getPurchaseState() == Purchase.PurchaseState.PURCHASED) {
+            pendingInapp.remove(token);
+            ownedInapp.put(token, purchase.getSku());
+        } else if (purchase.getPurchaseState() == Purchase.PurchaseState.PENDING) {
+            pendingInapp.put(token, purchase.getSku());
+        }
+    }
+
+    private void invalidate() {
+        dirty = true;
+        if (!scheduled) {
+            scheduled = true;
+            frameScheduler.scheduleFrame(publishRunnable);
+        }
+    }
+
+    /**
+     * 计算新的快照，内容没有变化时不回调
+     */
+    void publish() {
+        scheduled = false;
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        Set<String> owned = new HashSet<>(ownedInapp.values());
+        Set<String> pending = new HashSet<>(pendingInapp.values());
+        if (snapshot.sameContent(owned, pending, subscriptions)) {
+            return;
+        }
+        snapshot = new EntitlementSnapshot(snapshot.getVersion() + 1, owned, pending, subscriptions);
+        for (EntitlementObserver observer : observers) {
+            observer.onEntitlementChanged(snapshot);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.pay.android.billing.history;
+
+import com.android.billingclient.api.PurchaseHistoryRecord;
+import com.pay.android.billing.utils.LogUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * 增量同步购买历史
+ * <p>
+ * 每种商品类型保存一份{@link PurchaseHistorySnapshot}，在工作线程中与Google Play返回的最新历史比较，
+ * 只把新增和变化的记录回调给调用方
+ */
+public class IncrementalHistorySync {
+
+    private static final String FILE_PREFIX = "purchase_history_";
+
+    public interface Callback {
+        /**
+         * 在callbackExecutor中回调，只在有新增或变化时回调
+         */
+        void onDelta(String skuType, List<PurchaseHistoryRecord> added, List<PurchaseHistoryRecord> changed);
+    }
+
+    private final File dir;
+    private final Executor workExecutor;
+    private final Executor callbackExecutor;
+    // 只在workExecutor中访问
+    private final Map<String, PurchaseHistorySnapshot> snapshots = new HashMap<>();
+    private volatile boolean debug;
+
+    /**
+     * @param dir              快照保存目录
+     * @param workExecutor     比较与读写快照的工作线程，需要是串行的
+     * @param callbackExecutor 回调线程
+     */
+    public IncrementalHistorySync(File dir, Executor workExecutor, Executor callbackExecutor) {
+        this.dir = dir;
+        this.workExecutor = workExecutor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * 是否打印日志，与BillingManager的debug开关一致
+     */
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    public void submit(final String skuType, final List<PurchaseHistoryRecord> records, final Callback callback) {
+        workExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                PurchaseHistorySnapshot snapshot = getSnapshot(skuType);
+                final List<PurchaseHistoryRecord> added = new ArrayList<>();
+                final List<PurchaseHistoryRecord> changed = new ArrayList<>();
+                if (!snapshot.merge(records, added, changed)) {
+                    return;
+                }
+                try {
+                    snapshot.save();
+                } catch (IOException e) {
+                    if (debug) LogUtils.e("save purchase history snapshot failed >>> [" + e.getMessage() + "]");
+                }
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onDelta(skuType, added, changed);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 清除快照，下一次同步会把所有历史作为新增记录回调
+     */
+    public void reset() {
+        workExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                snapshots.clear();
+                File[] files = dir.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        if (file.getName().startsWith(FILE_PREFIX)) {
+                            file.delete();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private PurchaseHistorySnapshot getSnapshot(String skuType) {
+        PurchaseHistorySnapshot snapshot = snapshots.get(skuType);
+        if (snapshot == null) {
+            dir.mkdirs();
+            snapshot = new PurchaseHistorySnapshot(new File(dir, FILE_PREFIX + skuType + ".dat"));
+            try {
+                snapshot.load();
+            } catch (IOException e) {
+                if (debug) LogUtils.e("load purchase history snapshot failed >>> [" + e.getMessage() + "]");
+                snapshot.clear();
+            }
+            snapshots.put(skuType, snapshot);
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,129 @@
+package com.pay.android.billing.history;
+
+import com.android.billingclient.api.PurchaseHistoryRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 购买历史快照，只保存purchaseToken、purchaseTime和原始json的hash，用于和最新的历史记录比较
+ * <p>
+ * 非线程安全，由{@link IncrementalHistorySync}在工作线程中使用
+ */
+public class PurchaseHistorySnapshot {
+
+    private static final int FILE_VERSION = 1;
+
+    private static final class Entry {
+        long purchaseTime;
+        int jsonHash;
+
+        Entry(long purchaseTime, int jsonHash) {
+            this.purchaseTime = purchaseTime;
+            this.jsonHash = jsonHash;
+        }
+    }
+
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    public PurchaseHistorySnapshot(File file) {
+        this.file = file;
+    }
+
+    /**
+     * 与最新的历史记录比较并更新快照
+     *
+     * @param records Google Play返回的历史记录
+     * @param added   新增的记录
+     * @param changed purchaseTime或内容发生变化的记录
+     * @return 快照是否有变化
+     */
+    public boolean merge(List<PurchaseHistoryRecord> records,
+                         List<PurchaseHistoryRecord> added,
+                         List<PurchaseHistoryRecord> changed) {
+        if (records == null) {
+            return false;
+        }
+        for (PurchaseHistoryRecord record : records) {
+            String token = record.getPurchaseToken();
+            int jsonHash = hash(record.getOriginalJson());
+            Entry entry = entries.get(token);
+            if (entry == null) {
+                entries.put(token, new Entry(record.getPurchaseTime(), jsonHash));
+                added.add(record);
+            } else if (entry.purchaseTime != record.getPurchaseTime() || entry.jsonHash != jsonHash) {
+                entry.purchaseTime = record.getPurchaseTime();
+                entry.jsonHash = jsonHash;
+                changed.add(record);
+            }
+        }
+        return !added.isEmpty() || !changed.isEmpty();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void load() throws IOException {
+        entries.clear();
+        if (!file.exists()) {
+            return;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != FILE_VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String token = in.readUTF();
+                long purchaseTime = in.readLong();
+                int jsonHash = in.readInt();
+                entries.put(token, new Entry(purchaseTime, jsonHash));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 先写入临时文件再重命名，避免写入过程中被杀导致快照损坏
+     */
+    public void save() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(FILE_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().purchaseTime);
+                out.writeInt(entry.getValue().jsonHash);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("rename " + tmp + " failed");
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        file.delete();
+    }
+
+    private static int hash(String json) {
+        return json == null ? 0 : json.hashCode();
+    }
+}
@@ -6,6 +6,9 @@ import com.android.billingclient.api.BillingResult;
 import com.android.billingclient.api.Purchase;
 import com.android.billingclient.api.PurchaseHistoryRecord;
 import com.android.billingclient.api.SkuDetails;
+import com.pay.android.billing.BillingRequest;
+import com.pay.android.billing.model.PurchaseInfo;
+import com.pay.android.billing.subs.SubscriptionState;
 
 import java.util.List;
 
@@ -69,6 +72,40 @@ public abstract class BaseBillingUpdateListener {
      */
     public abstract void onPurchaseHistoryResponse(BillingResult billingResult, List<PurchaseHistoryRecord> list);
 
+    /**
+     * 增量查询购买历史，只回调与上一次相比新增和变化的记录，没有变化时不回调
+     * 详见{@link com.pay.android.billing.BillingManager#queryPurchaseHistoryIncremental(String)}
+     */
+    public void onPurchaseHistoryDelta(String skuType, List<PurchaseHistoryRecord> added, List<PurchaseHistoryRecord> changed) {
+
+    }
+
+    /**
+     * 服务端校验结果，校验通过的订单会自动进行消耗或确认
+     * 详见{@link com.pay.android.billing.BillingManager#setVerificationUploader(com.pay.android.billing.verify.VerificationUploader)}
+     */
+    public void onPurchaseVerified(PurchaseInfo purchaseInfo, boolean valid) {
+
+    }
+
+    /**
+     * 订单即将到达确认截止时间(购买后3天)，超过后Google Play会自动退款，每个订单只回调一次
+     *
+     * @param deadline 截止时间
+     */
+    public void onAcknowledgeDeadlineApproaching(String purchaseToken, String sku, long deadline) {
+
+    }
+
+    /**
+     * 请求超时，之后该请求的结果会被忽略，不会再回调对应的成功或失败方法
+     *
+     * @param request 超时的请求，{@link BillingRequest#getOperation()}为请求名称
+     */
+    public void onRequestTimeout(BillingRequest request) {
+
+    }
+
     /**
      * 内购取消
      */
@@ -79,4 +116,13 @@ public abstract class BaseBillingUpdateListener {
      */
     public abstract void onPurchasesFailure(int errorCode, String message);
 
+    /**
+     * 订阅权益状态发生转换，状态不变时不会回调
+     *
+     * @param oldState 首次出现的订阅为null
+     */
+    public void onSubscriptionStateChanged(String sku, SubscriptionState oldState, SubscriptionState newState) {
+
+    }
+
 }
\ No newline at end of file
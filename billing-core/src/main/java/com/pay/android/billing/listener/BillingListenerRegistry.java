@@ -0,0 +1,226 @@
+package com.pay.android.billing.listener;
+
+import android.app.Activity;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.pay.android.billing.utils.LogUtils;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 回调监听的注册表
+ * <p>
+ * 绑定{@link LifecycleOwner}的监听会在ON_DESTROY时自动移除，也可以选择弱引用持有，
+ * 避免忘记调用removeGooglePayListener时单例一直持有Activity。
+ * 开启泄漏检查后，宿主已销毁但仍未移除的监听会打印警告，并可通过{@link #checkLeaks()}获取。
+ * <p>
+ * 非线程安全，需要在主线程调用
+ */
+public class BillingListenerRegistry {
+
+    /**
+     * 一个注册的监听，弱引用注册的监听被回收后{@link #get()}返回null
+     */
+    public static final class Entry {
+        private final String tag;
+        private final BaseBillingUpdateListener strong;
+        private final WeakReference<BaseBillingUpdateListener> weak;
+        // 宿主，LifecycleOwner或Activity，用于泄漏检查
+        private final WeakReference<Object> owner;
+        private final String ownerName;
+        private Lifecycle lifecycle;
+        private LifecycleEventObserver observer;
+        private boolean leakReported;
+
+        private Entry(String tag, BaseBillingUpdateListener listener, boolean weakRef, @Nullable Object owner) {
+            this.tag = tag;
+            this.strong = weakRef ? null : listener;
+            this.weak = weakRef ? new WeakReference<>(listener) : null;
+            this.owner = owner == null ? null : new WeakReference<>(owner);
+            this.ownerName = owner == null ? null : owner.getClass().getName();
+        }
+
+        @Nullable
+        public BaseBillingUpdateListener get() {
+            return strong != null ? strong : weak.get();
+        }
+
+        boolean isOwnerDestroyed() {
+            if (owner == null) {
+                return false;
+            }
+            Object o = owner.get();
+            if (o == null) {
+                return true;
+            }
+            if (o instanceof LifecycleOwner) {
+                return ((LifecycleOwner) o).getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED;
+            }
+            return o instanceof Activity && ((Activity) o).isDestroyed();
+        }
+    }
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private final Map<String, Entry> holders = new LinkedHashMap<>();
+    // 分发用的数组，注册表变化时置为null，下次分发时重建。只持有Entry，不会强引用弱引用注册的监听
+    private Entry[] snapshot = NO_ENTRIES;
+    private int weakCount;
+    private boolean leakCheck;
+
+    /**
+     * 开启泄漏检查，建议只在debug包中开启
+     */
+    public void setLeakCheckEnabled(boolean leakCheck) {
+        this.leakCheck = leakCheck;
+    }
+
+    /**
+     * 强引用注册，需要手动调用{@link #remove(String)}
+     *
+     * @param owner 宿主，只用于泄漏检查，可为null
+     */
+    public void put(@NonNull String tag, @NonNull BaseBillingUpdateListener listener, @Nullable Object owner) {
+        add(new Entry(tag, listener, false, owner));
+    }
+
+    /**
+     * 绑定生命周期注册，宿主ON_DESTROY时自动移除。已销毁的宿主直接忽略
+     *
+     * @param weak 是否弱引用持有listener，为true时调用方需要自己持有listener(如Activity的成员变量)
+     */
+    public void put(@NonNull LifecycleOwner owner, @NonNull final String tag,
+                    @NonNull BaseBillingUpdateListener listener, boolean weak) {
+        Lifecycle lifecycle = owner.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            return;
+        }
+        final Entry holder = new Entry(tag, listener, weak, owner);
+        holder.lifecycle = lifecycle;
+        holder.observer = new LifecycleEventObserver() {
+            @Override
+            public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+                if (event == Lifecycle.Event.ON_DESTROY && holders.get(tag) == holder) {
+                    remove(tag);
+                }
+            }
+        };
+        add(holder);
+        lifecycle.addObserver(holder.observer);
+    }
+
+    public void remove(String tag) {
+        Entry holder = holders.remove(tag);
+        if (holder != null) {
+            snapshot = null;
+            detach(holder);
+        }
+    }
+
+    public void clear() {
+        for (Entry holder : holders.values()) {
+            detach(holder);
+        }
+        holders.clear();
+        snapshot = NO_ENTRIES;
+        weakCount = 0;
+    }
+
+    /**
+     * 当前注册的监听，注册表不变时每次返回同一个数组，分发时不分配对象。
+     * 数组不可修改，回调中注册或移除监听不影响本次遍历。
+     * <p>
+     * 弱引用注册的监听可能已被回收，遍历时需要跳过{@link Entry#get()}为null的项；
+     * 发现已回收的项时重建数组并移除这些项
+     */
+    @NonNull
+    public Entry[] getEntries() {
+        Entry[] entries = snapshot;
+        if (entries == null || (weakCount > 0 && hasCleared(entries))) {
+            entries = snapshot = rebuild();
+        }
+        if (leakCheck) {
+            for (Entry holder : entries) {
+                reportIfLeaked(holder);
+            }
+        }
+        return entries;
+    }
+
+    private static boolean hasCleared(Entry[] entries) {
+        for (Entry entry : entries) {
+            if (entry.get() == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Entry[] rebuild() {
+        Entry[] entries = new Entry[holders.size()];
+        int count = 0;
+        weakCount = 0;
+        Iterator<Entry> iterator = holders.values().iterator();
+        while (iterator.hasNext()) {
+            Entry holder = iterator.next();
+            if (holder.get() == null) {
+                iterator.remove();
+                detach(holder);
+                continue;
+            }
+            if (holder.weak != null) {
+                weakCount++;
+            }
+            entries[count++] = holder;
+        }
+        return count == entries.length ? entries : Arrays.copyOf(entries, count);
+    }
+
+    /**
+     * 宿主已销毁但仍未移除的监听
+     *
+     * @return 泄漏的监听tag
+     */
+    @NonNull
+    public List<String> checkLeaks() {
+        List<String> leaked = new ArrayList<>();
+        for (Entry holder : holders.values()) {
+            if (holder.get() != null && holder.isOwnerDestroyed()) {
+                leaked.add(holder.tag);
+                reportIfLeaked(holder);
+            }
+        }
+        return leaked;
+    }
+
+    private void add(Entry holder) {
+        snapshot = null;
+        detach(holders.put(holder.tag, holder));
+    }
+
+    private void reportIfLeaked(Entry holder) {
+        if (!holder.leakReported && holder.isOwnerDestroyed()) {
+            holder.leakReported = true;
+            LogUtils.w("listener leaked >>> [tag：" + holder.tag + ",owner：" + holder.ownerName
+                    + "] is still registered after its owner was destroyed, call removeGooglePayListener or register with a LifecycleOwner");
+        }
+    }
+
+    private static void detach(@Nullable Entry holder) {
+        if (holder != null && holder.lifecycle != null) {
+            holder.lifecycle.removeObserver(holder.observer);
+            holder.lifecycle = null;
+        }
+    }
+}
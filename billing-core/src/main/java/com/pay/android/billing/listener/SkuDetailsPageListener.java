@@ -0,0 +1,32 @@
+package com.pay.android.billing.listener;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.billingclient.api.BillingResult;
+import com.android.billingclient.api.SkuDetails;
+
+import java.util.List;
+
+/**
+ * 分页查询商品信息的回调，在主线程回调
+ */
+public interface SkuDetailsPageListener {
+
+    /**
+     * 一页查询成功，各页按完成顺序回调，不保证按页码顺序
+     *
+     * @param page       页码，从0开始
+     * @param skuDetails 本页的商品信息
+     */
+    void onPage(@NonNull String skuType, int page, @NonNull List<SkuDetails> skuDetails);
+
+    /**
+     * 所有页都已结束
+     *
+     * @param pageCount   总页数
+     * @param failedSkus  查询失败的页中的sku，全部成功时为空
+     * @param lastFailure 最后一次失败的结果，全部成功时为null
+     */
+    void onComplete(@NonNull String skuType, int pageCount, @NonNull List<String> failedSkus, @Nullable BillingResult lastFailure);
+}
@@ -0,0 +1,70 @@
+package com.pay.android.billing.model;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * 只追加的字节区，把originalJson、signature这类大字段以UTF-8连续保存在同一个数组中，
+ * 避免每条记录各自持有一个String和char数组
+ * <p>
+ * {@link #append(String)}返回的句柄高32位为偏移，低32位为长度，null对应{@link #NULL_HANDLE}。
+ * 只能整体{@link #clear()}，非线程安全
+ */
+public class ByteArena {
+
+    public static final long NULL_HANDLE = -1L;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private byte[] bytes;
+    private int size;
+
+    public ByteArena() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ByteArena(int initialCapacity) {
+        bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+    public long append(String value) {
+        if (value == null) {
+            return NULL_HANDLE;
+        }
+        byte[] data = value.getBytes(UTF_8);
+        ensureCapacity(size + data.length);
+        System.arraycopy(data, 0, bytes, size, data.length);
+        long handle = ((long) size << 32) | data.length;
+        size += data.length;
+        return handle;
+    }
+
+    public String getString(long handle) {
+        if (handle == NULL_HANDLE) {
+            return null;
+        }
+        return new String(bytes, (int) (handle >>> 32), (int) handle, UTF_8);
+    }
+
+    /**
+     * 已使用的字节数
+     */
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required < 0) {
+            throw new IllegalStateException("byte arena is full");
+        }
+        if (required > bytes.length) {
+            int capacity = bytes.length + (bytes.length >> 1);
+            bytes = Arrays.copyOf(bytes, capacity < 0 ? Integer.MAX_VALUE : Math.max(capacity, required));
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.pay.android.billing.model;
+
+import com.android.billingclient.api.Purchase;
+import com.android.billingclient.api.PurchaseHistoryRecord;
+import com.pay.android.billing.catalogue.SkuCatalogue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑的购买记录集合，用于保存上千条购买或历史记录
+ * <p>
+ * 按列保存，不为每条记录创建{@link PurchaseInfo}：
+ * sku保存为{@link SkuCatalogue}中的int id，目录外的sku保存在本集合的附加表中；
+ * packageName和developerPayload通过{@link StringPool}共享实例；
+ * originalJson和signature以UTF-8保存在{@link ByteArena}中，读取时再解码。
+ * <p>
+ * sku id绑定创建时的目录，目录热更新后已保存的记录仍按旧目录解析。非线程安全
+ */
+public class CompactPurchaseStore {
+
+    private static final int NULL_SKU = -1;
+    private static final int ARENA_PRESIZE_RECORDS = 8;
+    private static final int BYTES_PER_RECORD_HINT = 512;
+
+    private final SkuCatalogue catalogue;
+    private final StringPool pool;
+    private final ByteArena arena;
+    // 目录外的sku，id为-(index + 2)
+    private final List<String> extraSkus = new ArrayList<>();
+    private final Map<String, Integer> extraSkuIds = new HashMap<>();
+
+    private int size;
+    private int[] skuIds;
+    private byte[] purchaseStates;
+    private long[] purchaseTimes;
+    private String[] purchaseTokens;
+    private String[] orderIds;
+    private String[] packageNames;
+    private String[] developerPayloads;
+    private long[] originalJsons;
+    private long[] signatures;
+
+    public CompactPurchaseStore(SkuCatalogue catalogue, StringPool pool, int initialCapacity) {
+        this.catalogue = catalogue;
+        this.pool = pool;
+        int capacity = Math.max(1, initialCapacity);
+        // 原始json通常在几百字节左右，字节区按需扩容，只按前几条记录预分配，避免大容量时乘法溢出或一次分配过多
+        this.arena = new ByteArena(Math.min(capacity, ARENA_PRESIZE_RECORDS) * BYTES_PER_RECORD_HINT);
+        skuIds = new int[capacity];
+        purchaseStates = new byte[capacity];
+        purchaseTimes = new long[capacity];
+        purchaseTokens = new String[capacity];
+        orderIds = new String[capacity];
+        packageNames = new String[capacity];
+        developerPayloads = new String[capacity];
+        originalJsons = new long[capacity];
+        signatures = new long[capacity];
+    }
+
+    /**
+     * @return 新记录的下标
+     */
+    public int add(Purchase purchase) {
+        return add(purchase.getSku(), purchase.getPurchaseState(), purchase.getPurchaseTime(),
+                purchase.getPurchaseToken(), purchase.getOrderId(), purchase.getPackageName(),
+                purchase.getDeveloperPayload(), purchase.getOriginalJson(), purchase.getSignature());
+    }
+
+    /**
+     * 历史记录没有订单状态、orderId和packageName，对应字段为{@link Purchase.PurchaseState#UNSPECIFIED_STATE}和null
+     */
+    public int add(PurchaseHistoryRecord record) {
+        return add(record.getSku(), Purchase.PurchaseState.UNSPECIFIED_STATE, record.getPurchaseTime(),
+                record.getPurchaseToken(), null, null,
+                record.getDeveloperPayload(), record.getOriginalJson(), record.getSignature());
+    }
+
+    public int add(PurchaseInfo purchaseInfo) {
+        return add(purchaseInfo.getSku(), purchaseInfo.getPurchaseState(), purchaseInfo.getPurchaseTime(),
+                purchaseInfo.getPurchaseToken(), purchaseInfo.getOrderId(), purchaseInfo.getPackageName(),
+                purchaseInfo.getDeveloperPayload(), purchaseInfo.getOriginalJson(), purchaseInfo.getSignature());
+    }
+
+    private int add(String sku, int purchaseState, long purchaseTime, String purchaseToken, String orderId,
+                    String packageName, String developerPayload, String originalJson, String signature) {
+        if (size == skuIds.length) {
+            grow();
+        }
+        int index = size++;
+        skuIds[index] = skuId(sku);
+        purchaseStates[index] = (byte) purchaseState;
+        purchaseTimes[index] = purchaseTime;
+        purchaseTokens[index] = purchaseToken;
+        orderIds[index] = orderId;
+        packageNames[index] = pool.intern(packageName);
+        developerPayloads[index] = pool.intern(developerPayload);
+        originalJsons[index] = arena.append(originalJson);
+        signatures[index] = arena.append(signature);
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public SkuCatalogue getCatalogue() {
+        return catalogue;
+    }
+
+    /**
+     * 创建对应下标的{@link PurchaseInfo}，只在需要完整对象时调用
+     */
+    public PurchaseInfo get(int index) {
+        checkIndex(index);
+        PurchaseInfo purchaseInfo = new PurchaseInfo();
+        purchaseInfo.setSku(getSku(index));
+        purchaseInfo.setPurchaseState(purchaseStates[index]);
+        purchaseInfo.setPurchaseTime(purchaseTimes[index]);
+        purchaseInfo.setPurchaseToken(purchaseTokens[index]);
+        purchaseInfo.setOrderId(orderIds[index]);
+        purchaseInfo.setPackageName(packageNames[index]);
+        purchaseInfo.setDeveloperPayload(developerPayloads[index]);
+        purchaseInfo.setOriginalJson(arena.getString(originalJsons[index]));
+        purchaseInfo.setSignature(arena.getString(signatures[index]));
+        return purchaseInfo;
+    }
+
+    /**
+     * @return 目录中的sku id，目录外的sku返回负数
+     */
+    public int getSkuId(int index) {
+        checkIndex(index);
+        return skuIds[index];
+    }
+
+    public String getSku(int index) {
+        int id = getSkuId(index);
+        if (id >= 0) {
+            return catalogue.getSku(id);
+        }
+        return id == NULL_SKU ? null : extraSkus.get(-id - 2);
+    }
+
+    public int getPurchaseState(int index) {
+        checkIndex(index);
+        return purchaseStates[index];
+    }
+
+    public long getPurchaseTime(int index) {
+        checkIndex(index);
+        return purchaseTimes[index];
+    }
+
+    public String getPurchaseToken(int index) {
+        checkIndex(index);
+        return purchaseTokens[index];
+    }
+
+    public String getOriginalJson(int index) {
+        checkIndex(index);
+        return arena.getString(originalJsons[index]);
+    }
+
+    public String getSignature(int index) {
+        checkIndex(index);
+        return arena.getString(signatures[index]);
+    }
+
+    /**
+     * 大字段占用的字节数
+     */
+    public int getArenaSize() {
+        return arena.size();
+    }
+
+    public void clear() {
+        Arrays.fill(purchaseTokens, 0, size, null);
+        Arrays.fill(orderIds, 0, size, null);
+        Arrays.fill(packageNames, 0, size, null);
+        Arrays.fill(developerPayloads, 0, size, null);
+        size = 0;
+        extraSkus.clear();
+        extraSkuIds.clear();
+        arena.clear();
+    }
+
+    private int skuId(String sku) {
+        if (sku == null) {
+            return NULL_SKU;
+        }
+        int id = catalogue.getId(sku);
+        if (id >= 0) {
+            return id;
+        }
+        Integer extra = extraSkuIds.get(sku);
+        if (extra == null) {
+            extra = -(extraSkus.size() + 2);
+            extraSkus.add(sku);
+            extraSkuIds.put(sku, extra);
+        }
+        return extra;
+    }
+
+    private void grow() {
+        int capacity = skuIds.length + (skuIds.length >> 1) + 1;
+        skuIds = Arrays.copyOf(skuIds, capacity);
+        purchaseStates = Arrays.copyOf(purchaseStates, capacity);
+        purchaseTimes = Arrays.copyOf(purchaseTimes, capacity);
+        purchaseTokens = Arrays.copyOf(purchaseTokens, capacity);
+        orderIds = Arrays.copyOf(orderIds, capacity);
+        packageNames = Arrays.copyOf(packageNames, capacity);
+        developerPayloads = Arrays.copyOf(developerPayloads, capacity);
+        originalJsons = Arrays.copyOf(originalJsons, capacity);
+        signatures = Arrays.copyOf(signatures, capacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+    }
+}
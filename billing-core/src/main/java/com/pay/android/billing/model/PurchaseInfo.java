@@ -15,6 +15,7 @@ public class PurchaseInfo implements Serializable {
     private String purchaseToken;
     private String signature;
     private String sku;
+    private String skuType;
 
     public PurchaseInfo() {
     }
@@ -103,6 +104,18 @@ public class PurchaseInfo implements Serializable {
         this.sku = sku;
     }
 
+    /**
+     * 加入校验队列时确定的商品类型{@link com.android.billingclient.api.BillingClient.SkuType}，
+     * 校验通过后按该类型消耗或确认，sku不在商品目录中时也能正确处理
+     */
+    public String getSkuType() {
+        return skuType;
+    }
+
+    public void setSkuType(String skuType) {
+        this.skuType = skuType;
+    }
+
     @Override
     public String toString() {
         return "PurchaseInfo{" +
@@ -115,6 +128,7 @@ public class PurchaseInfo implements Serializable {
                 ", purchaseToken='" + purchaseToken + '\'' +
                 ", signature='" + signature + '\'' +
                 ", sku='" + sku + '\'' +
+                ", skuType='" + skuType + '\'' +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.pay.android.billing.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 有上限的字符串池，用于packageName、developerPayload这类取值很少但重复出现的字段
+ * <p>
+ * 池满后不再加入新值，直接返回原字符串，已加入的值不淘汰，保证同一个值始终返回同一个实例。
+ * 线程安全
+ */
+public class StringPool {
+
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private final int maxSize;
+    private final Map<String, String> values;
+
+    public StringPool() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public StringPool(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.values = new HashMap<>(Math.min(maxSize, 64));
+    }
+
+    /**
+     * @return 池中相同的实例，池满且不存在时返回value本身
+     */
+    public synchronized String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String pooled = values.get(value);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (values.size() < maxSize) {
+            values.put(value, value);
+        }
+        return value;
+    }
+
+    public synchronized int size() {
+        return values.size();
+    }
+
+    public synchronized void clear() {
+        values.clear();
+    }
+}
@@ -0,0 +1,62 @@
+package com.pay.android.billing.request;
+
+import com.android.billingclient.api.BillingClient;
+
+import java.util.Random;
+
+/**
+ * 默认重试策略
+ * <p>
+ * SERVICE_DISCONNECTED、SERVICE_UNAVAILABLE、ERROR可重试，其余响应码(ITEM_UNAVAILABLE、DEVELOPER_ERROR等)直接失败。
+ * 重试间隔为带随机抖动的指数退避：在[0, min(maxDelay, baseDelay * 2^(n-1))]之间随机取值，避免大量请求同时重试
+ */
+public class DefaultRetryPolicy implements RetryPolicy {
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 500;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 15000;
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random = new Random();
+
+    public DefaultRetryPolicy() {
+        this(DEFAULT_MAX_RETRIES, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * @param maxRetries      每个请求最多重试次数，0表示不重试
+     * @param baseDelayMillis 第一次重试的最大等待时间
+     * @param maxDelayMillis  等待时间上限
+     */
+    public DefaultRetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    @Override
+    public boolean isRetryable(int responseCode) {
+        switch (responseCode) {
+            case BillingClient.BillingResponseCode.SERVICE_DISCONNECTED:
+            case BillingClient.BillingResponseCode.SERVICE_UNAVAILABLE:
+            case BillingClient.BillingResponseCode.ERROR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    @Override
+    public long getRetryDelayMillis(int retryCount) {
+        int shift = Math.min(retryCount - 1, 20);
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << shift);
+        return (long) (random.nextDouble() * ceiling);
+    }
+}
@@ -0,0 +1,72 @@
+package com.pay.android.billing.request;
+
+/**
+ * 优先级通道的排队统计，调用{@link RequestScheduler#getLaneMetrics(int)}时生成的快照
+ */
+public final class LaneMetrics {
+
+    private final int lane;
+    private final int queueDepth;
+    private final int maxQueueDepth;
+    private final long executedCount;
+    private final long totalQueueTimeMillis;
+    private final long maxQueueTimeMillis;
+
+    LaneMetrics(int lane, int queueDepth, int maxQueueDepth, long executedCount,
+                long totalQueueTimeMillis, long maxQueueTimeMillis) {
+        this.lane = lane;
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.executedCount = executedCount;
+        this.totalQueueTimeMillis = totalQueueTimeMillis;
+        this.maxQueueTimeMillis = maxQueueTimeMillis;
+    }
+
+    public int getLane() {
+        return lane;
+    }
+
+    /**
+     * 当前排队的请求数
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * 排队请求数的历史峰值
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * 已执行的请求数
+     */
+    public long getExecutedCount() {
+        return executedCount;
+    }
+
+    /**
+     * 从进入调度队列到开始执行的平均时间，不包括等待连接的时间
+     */
+    public long getAverageQueueTimeMillis() {
+        return executedCount == 0 ? 0 : totalQueueTimeMillis / executedCount;
+    }
+
+    public long getMaxQueueTimeMillis() {
+        return maxQueueTimeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "LaneMetrics{" +
+                "lane=" + lane +
+                ", queueDepth=" + queueDepth +
+                ", maxQueueDepth=" + maxQueueDepth +
+                ", executedCount=" + executedCount +
+                ", averageQueueTimeMillis=" + getAverageQueueTimeMillis() +
+                ", maxQueueTimeMillis=" + maxQueueTimeMillis +
+                '}';
+    }
+}
@@ -0,0 +1,75 @@
+package com.pay.android.billing.request;
+
+/**
+ * 限流统计信息，调用{@link RequestScheduler#getMetrics(int)}时生成的快照
+ */
+public final class RateLimiterMetrics {
+
+    private final int queueDepth;
+    private final int maxQueueDepth;
+    private final long executedCount;
+    private final long throttledCount;
+    private final long totalThrottleDelayMillis;
+    private final long maxThrottleDelayMillis;
+
+    RateLimiterMetrics(int queueDepth, int maxQueueDepth, long executedCount, long throttledCount,
+                       long totalThrottleDelayMillis, long maxThrottleDelayMillis) {
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.executedCount = executedCount;
+        this.throttledCount = throttledCount;
+        this.totalThrottleDelayMillis = totalThrottleDelayMillis;
+        this.maxThrottleDelayMillis = maxThrottleDelayMillis;
+    }
+
+    /**
+     * 当前排队等待令牌的请求数
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * 排队请求数的历史峰值
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * 已执行的请求数
+     */
+    public long getExecutedCount() {
+        return executedCount;
+    }
+
+    /**
+     * 因没有令牌而被延迟执行的请求数
+     */
+    public long getThrottledCount() {
+        return throttledCount;
+    }
+
+    /**
+     * 被延迟请求的平均等待时间
+     */
+    public long getAverageThrottleDelayMillis() {
+        return throttledCount == 0 ? 0 : totalThrottleDelayMillis / throttledCount;
+    }
+
+    public long getMaxThrottleDelayMillis() {
+        return maxThrottleDelayMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiterMetrics{" +
+                "queueDepth=" + queueDepth +
+                ", maxQueueDepth=" + maxQueueDepth +
+                ", executedCount=" + executedCount +
+                ", throttledCount=" + throttledCount +
+                ", averageThrottleDelayMillis=" + getAverageThrottleDelayMillis() +
+                ", maxThrottleDelayMillis=" + maxThrottleDelayMillis +
+                '}';
+    }
+}
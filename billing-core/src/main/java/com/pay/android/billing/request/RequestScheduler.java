@@ -0,0 +1,299 @@
+package com.pay.android.billing.request;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Google Play结算请求调度：优先级通道 + 限流
+ * <p>
+ * 请求按优先级放入不同的通道：确认/消耗 > 用户发起的购买 > 界面上的查询 > 后台刷新，同一通道内按提交顺序执行。
+ * 每次优先执行得分最低的通道头部请求，得分 = 通道序号 * agingMillis - 已等待时间，
+ * 低优先级的请求每等待agingMillis提升一级，不会被持续的高优先级请求饿死。
+ * <p>
+ * 查询类请求(querySkuDetails、queryPurchases等)与修改类请求(consume、acknowledge等)使用不同的令牌桶限流，
+ * 没有令牌的请求继续排队，由调用方在{@link #drain()}返回的延迟之后再次调用drain执行。
+ * 只有所属令牌桶没有令牌时才计为被限流，在高优先级通道后面排队的时间只计入通道的排队统计。
+ * <p>
+ * 非线程安全，需要在同一线程（主线程）调用
+ */
+public class RequestScheduler {
+
+    public static final int TYPE_QUERY = 0;
+    public static final int TYPE_MUTATION = 1;
+
+    /**
+     * 消耗与确认，以及查找未确认订单的queryPurchases
+     */
+    public static final int LANE_FINALIZATION = 0;
+    /**
+     * 用户发起的购买
+     */
+    public static final int LANE_PURCHASE = 1;
+    /**
+     * 界面等待结果的查询
+     */
+    public static final int LANE_INTERACTIVE_QUERY = 2;
+    /**
+     * 后台刷新，如购买历史、大批量商品信息
+     */
+    public static final int LANE_BACKGROUND_REFRESH = 3;
+    public static final int LANE_COUNT = 4;
+
+    public static final int DEFAULT_QUERY_CAPACITY = 10;
+    public static final double DEFAULT_QUERY_PERMITS_PER_SECOND = 5;
+    public static final int DEFAULT_MUTATION_CAPACITY = 5;
+    public static final double DEFAULT_MUTATION_PERMITS_PER_SECOND = 2;
+    public static final long DEFAULT_AGING_MILLIS = 1000;
+
+    /**
+     * 单调递增的时间，如SystemClock.uptimeMillis()
+     */
+    public interface Clock {
+        long now();
+    }
+
+    private static final class QueuedRequest {
+        final int type;
+        final Runnable runnable;
+        final long enqueueTime;
+        // 第一次因没有令牌而无法执行的时间，-1表示未被限流
+        long throttledAt = -1;
+
+        QueuedRequest(int type, Runnable runnable, long enqueueTime) {
+            this.type = type;
+            this.runnable = runnable;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+
+    private static final class Bucket {
+        TokenBucket tokenBucket;
+        int queueDepth;
+        int maxQueueDepth;
+        long executedCount;
+        long throttledCount;
+        long totalThrottleDelay;
+        long maxThrottleDelay;
+        // 本次drain中已没有令牌
+        boolean exhausted;
+
+        Bucket(TokenBucket tokenBucket) {
+            this.tokenBucket = tokenBucket;
+        }
+    }
+
+    private static final class Lane {
+        final ArrayDeque<QueuedRequest> queue = new ArrayDeque<>();
+        int maxQueueDepth;
+        long executedCount;
+        long totalQueueTime;
+        long maxQueueTime;
+    }
+
+    private final Bucket[] buckets = {
+            new Bucket(new TokenBucket(DEFAULT_QUERY_CAPACITY, DEFAULT_QUERY_PERMITS_PER_SECOND)),
+            new Bucket(new TokenBucket(DEFAULT_MUTATION_CAPACITY, DEFAULT_MUTATION_PERMITS_PER_SECOND))
+    };
+    private final Lane[] lanes = new Lane[LANE_COUNT];
+    private final Clock clock;
+    private long agingMillis = DEFAULT_AGING_MILLIS;
+    private boolean draining;
+
+    public RequestScheduler(Clock clock) {
+        this.clock = clock;
+        for (int i = 0; i < LANE_COUNT; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    /**
+     * 设置限流参数
+     *
+     * @param type             {@link #TYPE_QUERY}或{@link #TYPE_MUTATION}
+     * @param capacity         允许突发的请求数
+     * @param permitsPerSecond 每秒允许的请求数
+     */
+    public void setRate(int type, int capacity, double permitsPerSecond) {
+        buckets[type].tokenBucket = new TokenBucket(capacity, permitsPerSecond);
+    }
+
+    /**
+     * 低优先级请求每等待多久提升一级
+     */
+    public void setAgingMillis(long agingMillis) {
+        this.agingMillis = Math.max(1, agingMillis);
+    }
+
+    /**
+     * @param lane 优先级通道，如{@link #LANE_FINALIZATION}
+     * @param type {@link #TYPE_QUERY}或{@link #TYPE_MUTATION}
+     */
+    public void enqueue(int lane, int type, Runnable runnable) {
+        Lane l = lanes[lane];
+        l.queue.add(new QueuedRequest(type, runnable, clock.now()));
+        l.maxQueueDepth = Math.max(l.maxQueueDepth, l.queue.size());
+        Bucket bucket = buckets[type];
+        bucket.queueDepth++;
+        bucket.maxQueueDepth = Math.max(bucket.maxQueueDepth, bucket.queueDepth);
+    }
+
+    /**
+     * 按优先级执行所有能获取到令牌的请求。请求执行过程中提交的新请求也会在本次调用中处理，
+     * 每个请求执行前重新读取时间
+     *
+     * @return 距离下一个排队请求可执行的时间，没有排队的请求或正在drain中返回-1
+     */
+    public long drain() {
+        if (draining) {
+            return -1;
+        }
+        draining = true;
+        try {
+            for (Bucket bucket : buckets) {
+                bucket.exhausted = false;
+            }
+            Lane lane;
+            long now = clock.now();
+            while ((lane = nextLane(now)) != null) {
+                QueuedRequest request = lane.queue.peek();
+                Bucket bucket = buckets[request.type];
+                if (!bucket.tokenBucket.tryAcquire(now)) {
+                    bucket.exhausted = true;
+                    continue;
+                }
+                lane.queue.poll();
+                bucket.queueDepth--;
+                record(lane, bucket, request, now);
+                request.runnable.run();
+                now = clock.now();
+            }
+        } finally {
+            draining = false;
+        }
+
+        long now = clock.now();
+        long delay = -1;
+        for (Lane lane : lanes) {
+            for (QueuedRequest request : lane.queue) {
+                // 令牌桶已耗尽时仍在排队的请求从此刻开始计为被限流
+                if (request.throttledAt < 0 && buckets[request.type].exhausted) {
+                    request.throttledAt = now;
+                }
+            }
+            QueuedRequest head = lane.queue.peek();
+            if (head != null) {
+                long wait = buckets[head.type].tokenBucket.millisUntilAvailable(now);
+                delay = delay < 0 ? wait : Math.min(delay, wait);
+            }
+        }
+        return delay;
+    }
+
+    /**
+     * 移除还在排队的请求，如请求被取消或超时
+     *
+     * @return 请求是否在队列中
+     */
+    public boolean remove(Runnable runnable) {
+        for (Lane lane : lanes) {
+            Iterator<QueuedRequest> iterator = lane.queue.iterator();
+            while (iterator.hasNext()) {
+                QueuedRequest request = iterator.next();
+                if (request.runnable == runnable) {
+                    iterator.remove();
+                    buckets[request.type].queueDepth--;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 移除并返回所有排队的请求，按通道优先级和入队顺序排列，如连接断开后需要重新连接再执行
+     */
+    public List<Runnable> takeAll() {
+        List<Runnable> runnables = new ArrayList<>(getQueueDepth());
+        for (Lane lane : lanes) {
+            for (QueuedRequest request : lane.queue) {
+                runnables.add(request.runnable);
+            }
+        }
+        clear();
+        return runnables;
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Lane lane : lanes) {
+            depth += lane.queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * 某一类请求的限流统计
+     *
+     * @param type {@link #TYPE_QUERY}或{@link #TYPE_MUTATION}
+     */
+    public RateLimiterMetrics getMetrics(int type) {
+        Bucket bucket = buckets[type];
+        return new RateLimiterMetrics(bucket.queueDepth, bucket.maxQueueDepth, bucket.executedCount,
+                bucket.throttledCount, bucket.totalThrottleDelay, bucket.maxThrottleDelay);
+    }
+
+    /**
+     * 某一优先级通道的排队统计
+     *
+     * @param lane 如{@link #LANE_FINALIZATION}
+     */
+    public LaneMetrics getLaneMetrics(int lane) {
+        Lane l = lanes[lane];
+        return new LaneMetrics(lane, l.queue.size(), l.maxQueueDepth, l.executedCount, l.totalQueueTime, l.maxQueueTime);
+    }
+
+    public void clear() {
+        for (Lane lane : lanes) {
+            lane.queue.clear();
+        }
+        for (Bucket bucket : buckets) {
+            bucket.queueDepth = 0;
+        }
+    }
+
+    /**
+     * 得分最低且令牌桶未耗尽的通道，得分相同时序号小的优先
+     */
+    private Lane nextLane(long now) {
+        Lane best = null;
+        long bestScore = Long.MAX_VALUE;
+        for (int i = 0; i < LANE_COUNT; i++) {
+            QueuedRequest head = lanes[i].queue.peek();
+            if (head == null || buckets[head.type].exhausted) {
+                continue;
+            }
+            long score = i * agingMillis - (now - head.enqueueTime);
+            if (score < bestScore) {
+                best = lanes[i];
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private static void record(Lane lane, Bucket bucket, QueuedRequest request, long now) {
+        long waited = Math.max(0, now - request.enqueueTime);
+        lane.executedCount++;
+        lane.totalQueueTime += waited;
+        lane.maxQueueTime = Math.max(lane.maxQueueTime, waited);
+        bucket.executedCount++;
+        if (request.throttledAt >= 0) {
+            long delay = Math.max(0, now - request.throttledAt);
+            bucket.throttledCount++;
+            bucket.totalThrottleDelay += delay;
+            bucket.maxThrottleDelay = Math.max(bucket.maxThrottleDelay, delay);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.pay.android.billing.request;
+
+/**
+ * 请求失败重试策略，可通过{@link com.pay.android.billing.BillingManager#setRetryPolicy(RetryPolicy)}替换
+ */
+public interface RetryPolicy {
+
+    /**
+     * 该响应码是否可以重试
+     *
+     * @param responseCode {@link com.android.billingclient.api.BillingClient.BillingResponseCode}
+     */
+    boolean isRetryable(int responseCode);
+
+    /**
+     * 每个请求最多重试的次数
+     */
+    int getMaxRetries();
+
+    /**
+     * 第retryCount次重试前等待的时间
+     *
+     * @param retryCount 从1开始
+     */
+    long getRetryDelayMillis(int retryCount);
+}
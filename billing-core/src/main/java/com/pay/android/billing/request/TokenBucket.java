@@ -0,0 +1,59 @@
+package com.pay.android.billing.request;
+
+/**
+ * 令牌桶，允许capacity个请求的突发，之后按permitsPerSecond的速度补充
+ * <p>
+ * 非线程安全
+ */
+public class TokenBucket {
+
+    private final int capacity;
+    private final double permitsPerMillis;
+    private double tokens;
+    private long lastRefillTime = -1;
+
+    /**
+     * @param capacity         桶容量，即允许突发的请求数
+     * @param permitsPerSecond 每秒补充的令牌数
+     */
+    public TokenBucket(int capacity, double permitsPerSecond) {
+        if (capacity < 1 || permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("capacity must be >= 1 and permitsPerSecond must be > 0");
+        }
+        this.capacity = capacity;
+        this.permitsPerMillis = permitsPerSecond / 1000d;
+        this.tokens = capacity;
+    }
+
+    /**
+     * 尝试获取一个令牌
+     *
+     * @param now 单调递增的时间，如SystemClock.uptimeMillis()
+     */
+    public boolean tryAcquire(long now) {
+        refill(now);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 距离下一个令牌可用的时间
+     */
+    public long millisUntilAvailable(long now) {
+        refill(now);
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / permitsPerMillis);
+    }
+
+    private void refill(long now) {
+        if (lastRefillTime >= 0 && now > lastRefillTime) {
+            tokens = Math.min(capacity, tokens + (now - lastRefillTime) * permitsPerMillis);
+        }
+        lastRefillTime = now;
+    }
+}
@@ -0,0 +1,342 @@
+package com.pay.android.billing.subs;
+
+import com.android.billingclient.api.Purchase;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * 订阅权益状态机
+ * <p>
+ * 每个订阅sku在 ACTIVE / GRACE / ON_HOLD / EXPIRED / PENDING 之间转换，
+ * 所有待发生的状态转换按时间排序放在一个优先队列中，调用方只需要在{@link #getNextTransitionTime()}
+ * 设置一个定时器并调用{@link #advance(long)}，不需要轮询queryPurchases。
+ * 当前是否享有权益由计数维护，{@link #isEntitled()}为O(1)。
+ * <p>
+ * 自动续订的订阅到达周期边界时保持ACTIVE，{@link #advance(long)}返回true提示调用方重新查询：
+ * 查询结果中仍有该订阅视为已续订，进入下一个周期；查询结果中没有时才进入GRACE。
+ * 一直没有查询结果时按间隔重复提示，宽限期结束后进入ON_HOLD。
+ * {@link #getState(String, long)}等方法按指定时间推算状态，不修改状态也不回调。
+ * <p>
+ * 非线程安全，需要在同一线程（主线程）调用。
+ */
+public class SubscriptionEntitlementEngine {
+
+    public static final long DEFAULT_GRACE_PERIOD_MILLIS = 3L * 24 * 60 * 60 * 1000;
+    public static final long DEFAULT_ACCOUNT_HOLD_MILLIS = 30L * 24 * 60 * 60 * 1000;
+    public static final long DEFAULT_RENEWAL_CHECK_MILLIS = 10L * 60 * 1000;
+
+    /**
+     * 状态转换回调
+     */
+    public interface OnStateChangedListener {
+        void onStateChanged(String sku, SubscriptionState oldState, SubscriptionState newState);
+    }
+
+    private static final class Entry {
+        final String sku;
+        SubscriptionState state;
+        long purchaseTime;
+        boolean autoRenewing;
+        // 计算到期时间使用的周期
+        SubscriptionPeriod period;
+        // 当前周期的结束时间
+        long expiresAt = Long.MAX_VALUE;
+        // 已到达周期边界，等待重新查询确认是否续订
+        boolean renewalPending;
+        long nextTransitionAt = Long.MAX_VALUE;
+
+        Entry(String sku) {
+            this.sku = sku;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final PriorityQueue<Entry> timerIndex = new PriorityQueue<>(11, new Comparator<Entry>() {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            return Long.compare(o1.nextTransitionAt, o2.nextTransitionAt);
+        }
+    });
+    private final Map<String, SubscriptionPeriod> periods = new HashMap<>();
+    private int entitledCount;
+
+    private long gracePeriodMillis = DEFAULT_GRACE_PERIOD_MILLIS;
+    private long accountHoldMillis = DEFAULT_ACCOUNT_HOLD_MILLIS;
+    private long renewalCheckMillis = DEFAULT_RENEWAL_CHECK_MILLIS;
+    private OnStateChangedListener listener;
+
+    public void setOnStateChangedListener(OnStateChangedListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 设置订阅周期，用于计算到期时间。未设置周期的sku只能在下一次全量同步时更新状态
+     *
+     * @param sku       订阅ID
+     * @param isoPeriod ISO 8601周期，如P1M
+     */
+    public void setSubscriptionPeriod(String sku, String isoPeriod) {
+        SubscriptionPeriod period = SubscriptionPeriod.parse(isoPeriod);
+        if (period != null) {
+            periods.put(sku, period);
+        }
+    }
+
+    public void setGracePeriodMillis(long gracePeriodMillis) {
+        this.gracePeriodMillis = gracePeriodMillis;
+    }
+
+    public void setAccountHoldMillis(long accountHoldMillis) {
+        this.accountHoldMillis = accountHoldMillis;
+    }
+
+    /**
+     * 到达周期边界后没有查询结果时，再次提示重新查询的间隔
+     */
+    public void setRenewalCheckMillis(long renewalCheckMillis) {
+        this.renewalCheckMillis = Math.max(1, renewalCheckMillis);
+    }
+
+    /**
+     * 使用queryPurchases(SUBS)的全量结果同步状态，不在列表中的订阅视为宽限期、保留期或过期
+     *
+     * @param purchases 当前拥有的订阅
+     * @param now       当前时间
+     */
+    public void sync(List<Purchase> purchases, long now) {
+        Set<String> owned = new HashSet<>();
+        if (purchases != null) {
+            for (Purchase purchase : purchases) {
+                owned.add(purchase.getSku());
+                onPurchase(purchase, now);
+            }
+        }
+        List<Entry> missing = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (!owned.contains(entry.sku)) {
+                missing.add(entry);
+            }
+        }
+        for (Entry entry : missing) {
+            if (entry.renewalPending && entry.state == SubscriptionState.ACTIVE) {
+                // 周期边界之后重新查询没有续订结果
+                long graceEnd = entry.expiresAt + gracePeriodMillis;
+                if (now < graceEnd) {
+                    transition(entry, SubscriptionState.GRACE, graceEnd);
+                } else {
+                    transition(entry, SubscriptionState.ON_HOLD, graceEnd + accountHoldMillis);
+                }
+            } else if (entry.state.isEntitled() && entry.autoRenewing) {
+                // 续订失败的订阅不会出现在queryPurchases中
+                transition(entry, SubscriptionState.ON_HOLD, now + accountHoldMillis);
+            } else if (entry.state == SubscriptionState.ACTIVE
+                    || entry.state == SubscriptionState.GRACE
+                    || entry.state == SubscriptionState.PENDING) {
+                transition(entry, SubscriptionState.EXPIRED, Long.MAX_VALUE);
+            }
+        }
+    }
+
+    /**
+     * 单条订阅更新，如onPurchasesUpdated，不影响其他订阅
+     */
+    public void onPurchase(Purchase purchase, long now) {
+        int purchaseState = purchase.getPurchaseState();
+        if (purchaseState != Purchase.PurchaseState.PURCHASED
+                && purchaseState != Purchase.PurchaseState.PENDING) {
+            return;
+        }
+        Entry entry = entries.get(purchase.getSku());
+        if (entry == null) {
+            entry = new Entry(purchase.getSku());
+            entries.put(entry.sku, entry);
+        }
+        SubscriptionPeriod period = periods.get(entry.sku);
+        if (purchaseState == Purchase.PurchaseState.PURCHASED && entry.state == SubscriptionState.ACTIVE
+                && !entry.renewalPending && entry.purchaseTime == purchase.getPurchaseTime()
+                && entry.autoRenewing == purchase.isAutoRenewing() && entry.period == period
+                && entry.nextTransitionAt > now) {
+            // 重复回调的订阅状态不变，到期时间仍是now之后的第一个周期边界，不需要重新计算
+            return;
+        }
+        entry.purchaseTime = purchase.getPurchaseTime();
+        entry.autoRenewing = purchase.isAutoRenewing();
+        entry.period = period;
+        if (purchaseState == Purchase.PurchaseState.PENDING) {
+            transition(entry, SubscriptionState.PENDING, Long.MAX_VALUE);
+        } else {
+            // 等待续订结果时收到订阅视为已续订，进入now之后的下一个周期
+            long expiry = period != null ? period.nextBoundaryAfter(entry.purchaseTime, now) : Long.MAX_VALUE;
+            entry.expiresAt = expiry;
+            transition(entry, SubscriptionState.ACTIVE, expiry);
+        }
+    }
+
+    /**
+     * 处理所有到期的状态转换，由定时器在{@link #getNextTransitionTime()}触发
+     *
+     * @return 是否有自动续订的订阅到达周期边界，调用方需要重新查询一次续订结果并调用{@link #sync}
+     */
+    public boolean advance(long now) {
+        boolean renewalCheckDue = false;
+        Entry entry;
+        while ((entry = timerIndex.peek()) != null && entry.nextTransitionAt <= now) {
+            long dueAt = entry.nextTransitionAt;
+            switch (entry.state) {
+                case ACTIVE:
+                    if (!entry.autoRenewing) {
+                        transition(entry, SubscriptionState.EXPIRED, Long.MAX_VALUE);
+                        break;
+                    }
+                    long graceEnd = entry.expiresAt + gracePeriodMillis;
+                    if (now >= graceEnd) {
+                        // 整个宽限期都没有续订结果
+                        transition(entry, SubscriptionState.ON_HOLD, graceEnd + accountHoldMillis);
+                        break;
+                    }
+                    // 保持ACTIVE，等待重新查询的结果
+                    entry.renewalPending = true;
+                    transition(entry, SubscriptionState.ACTIVE, Math.min(now + renewalCheckMillis, graceEnd));
+                    renewalCheckDue = true;
+                    break;
+                case GRACE:
+                    transition(entry, SubscriptionState.ON_HOLD, dueAt + accountHoldMillis);
+                    break;
+                case ON_HOLD:
+                    transition(entry, SubscriptionState.EXPIRED, Long.MAX_VALUE);
+                    break;
+                default:
+                    timerIndex.poll();
+                    entry.nextTransitionAt = Long.MAX_VALUE;
+                    break;
+            }
+        }
+        return renewalCheckDue;
+    }
+
+    /**
+     * 下一次状态转换的时间，没有则返回{@link Long#MAX_VALUE}
+     */
+    public long getNextTransitionTime() {
+        Entry entry = timerIndex.peek();
+        return entry == null ? Long.MAX_VALUE : entry.nextTransitionAt;
+    }
+
+    /**
+     * 是否有任意订阅处于享有权益的状态
+     */
+    public boolean isEntitled() {
+        return entitledCount > 0;
+    }
+
+    public boolean isEntitled(String sku) {
+        Entry entry = entries.get(sku);
+        return entry != null && entry.state.isEntitled();
+    }
+
+    /**
+     * @return 未知的sku返回null
+     */
+    public SubscriptionState getState(String sku) {
+        Entry entry = entries.get(sku);
+        return entry == null ? null : entry.state;
+    }
+
+    /**
+     * 按now推算是否有任意订阅享有权益，不处理到期的转换
+     */
+    public boolean isEntitled(long now) {
+        for (Entry entry : entries.values()) {
+            if (stateAt(entry, now).isEntitled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEntitled(String sku, long now) {
+        SubscriptionState state = getState(sku, now);
+        return state != null && state.isEntitled();
+    }
+
+    /**
+     * 按now推算的状态，与{@link #advance(long)}的规则一致，但不修改状态也不回调
+     *
+     * @return 未知的sku返回null
+     */
+    public SubscriptionState getState(String sku, long now) {
+        Entry entry = entries.get(sku);
+        return entry == null ? null : stateAt(entry, now);
+    }
+
+    public void clear() {
+        entries.clear();
+        timerIndex.clear();
+        entitledCount = 0;
+    }
+
+    private SubscriptionState stateAt(Entry entry, long now) {
+        SubscriptionState state = entry.state;
+        long dueAt = entry.nextTransitionAt;
+        while (dueAt <= now) {
+            switch (state) {
+                case ACTIVE:
+                    if (!entry.autoRenewing) {
+                        return SubscriptionState.EXPIRED;
+                    }
+                    long graceEnd = entry.expiresAt + gracePeriodMillis;
+                    if (now < graceEnd) {
+                        // 等待重新查询的结果
+                        return SubscriptionState.ACTIVE;
+                    }
+                    state = SubscriptionState.ON_HOLD;
+                    dueAt = graceEnd + accountHoldMillis;
+                    break;
+                case GRACE:
+                    state = SubscriptionState.ON_HOLD;
+                    dueAt += accountHoldMillis;
+                    break;
+                case ON_HOLD:
+                    return SubscriptionState.EXPIRED;
+                default:
+                    return state;
+            }
+        }
+        return state;
+    }
+
+    private void transition(Entry entry, SubscriptionState newState, long nextTransitionAt) {
+        if (newState != SubscriptionState.ACTIVE) {
+            entry.renewalPending = false;
+        }
+        if (entry.nextTransitionAt != Long.MAX_VALUE) {
+            timerIndex.remove(entry);
+        }
+        entry.nextTransitionAt = nextTransitionAt;
+        if (nextTransitionAt != Long.MAX_VALUE) {
+            timerIndex.add(entry);
+        }
+
+        SubscriptionState oldState = entry.state;
+        if (oldState == newState) {
+            return;
+        }
+        if (oldState != null && oldState.isEntitled()) {
+            entitledCount--;
+        }
+        if (newState.isEntitled()) {
+            entitledCount++;
+        }
+        entry.state = newState;
+        if (listener != null) {
+            listener.onStateChanged(entry.sku, oldState, newState);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.pay.android.billing.subs;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * 订阅周期，对应{@code SkuDetails#getSubscriptionPeriod()}返回的ISO 8601格式，如P1W、P1M、P3M、P1Y
+ */
+public final class SubscriptionPeriod {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final int years;
+    private final int months;
+    private final int days;
+
+    private SubscriptionPeriod(int years, int months, int days) {
+        this.years = years;
+        this.months = months;
+        this.days = days;
+    }
+
+    /**
+     * 解析ISO 8601周期
+     *
+     * @param iso 如P1M
+     * @return 解析失败返回null
+     */
+    public static SubscriptionPeriod parse(String iso) {
+        if (iso == null || iso.length() < 3 || iso.charAt(0) != 'P') {
+            return null;
+        }
+        int years = 0, months = 0, days = 0;
+        int value = 0;
+        boolean hasValue = false;
+        for (int i = 1; i < iso.length(); i++) {
+            char c = iso.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                hasValue = true;
+                continue;
+            }
+            if (!hasValue) {
+                return null;
+            }
+            switch (c) {
+                case 'Y':
+                    years += value;
+                    break;
+                case 'M':
+                    months += value;
+                    break;
+                case 'W':
+                    days += value * 7;
+                    break;
+                case 'D':
+                    days += value;
+                    break;
+                default:
+                    return null;
+            }
+            value = 0;
+            hasValue = false;
+        }
+        if (hasValue || years + months + days == 0) {
+            return null;
+        }
+        return new SubscriptionPeriod(years, months, days);
+    }
+
+    /**
+     * 在指定时间上增加一个周期
+     */
+    public long addTo(long timeMillis) {
+        return addTo(Calendar.getInstance(UTC), timeMillis, 1);
+    }
+
+    /**
+     * 从开始时间按周期滚动，返回第一个晚于now的周期结束时间。
+     * 每次都从开始时间计算，避免月末日期逐次累积偏移。
+     * 先按平均周期长度估算经过的周期数，再前后修正，不随经过的周期数线性增长
+     */
+    public long nextBoundaryAfter(long startMillis, long now) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        int count = 1;
+        if (now > startMillis) {
+            long estimate = (long) ((now - startMillis) / averageMillis());
+            count = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 1000, estimate));
+        }
+        while (count > 1 && addTo(calendar, startMillis, count - 1) > now) {
+            count--;
+        }
+        long boundary = addTo(calendar, startMillis, count);
+        while (boundary <= now) {
+            boundary = addTo(calendar, startMillis, ++count);
+        }
+        return boundary;
+    }
+
+    private double averageMillis() {
+        return (years * 365.2425 + months * 30.436875 + days) * 24 * 60 * 60 * 1000;
+    }
+
+    private long addTo(Calendar calendar, long timeMillis, int count) {
+        calendar.setTimeInMillis(timeMillis);
+        calendar.add(Calendar.YEAR, years * count);
+        calendar.add(Calendar.MONTH, months * count);
+        calendar.add(Calendar.DAY_OF_MONTH, days * count);
+        return calendar.getTimeInMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "P" + (years > 0 ? years + "Y" : "") + (months > 0 ? months + "M" : "") + (days > 0 ? days + "D" : "");
+    }
+}
@@ -0,0 +1,45 @@
+package com.pay.android.billing.subs;
+
+/**
+ * 订阅权益状态
+ */
+public enum SubscriptionState {
+
+    /**
+     * 有效期内
+     */
+    ACTIVE(true),
+
+    /**
+     * 宽限期，续订扣款未完成但仍保留权益
+     */
+    GRACE(true),
+
+    /**
+     * 账号保留期，续订失败，暂停权益
+     */
+    ON_HOLD(false),
+
+    /**
+     * 已过期
+     */
+    EXPIRED(false),
+
+    /**
+     * 待处理的订单，尚未付款完成
+     */
+    PENDING(false);
+
+    private final boolean entitled;
+
+    SubscriptionState(boolean entitled) {
+        this.entitled = entitled;
+    }
+
+    /**
+     * 当前状态下是否享有权益
+     */
+    public boolean isEntitled() {
+        return entitled;
+    }
+}
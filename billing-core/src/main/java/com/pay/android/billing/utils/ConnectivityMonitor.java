@@ -0,0 +1,132 @@
+package com.pay.android.billing.utils;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 网络状态监听
+ * <p>
+ * 通过{@link ConnectivityManager.NetworkCallback}缓存当前网络状态，{@link #isConnected()}不再每次查询系统服务。
+ * Android 6.0及以上只有通过验证(VALIDATED)的网络才视为可用
+ */
+public class ConnectivityMonitor {
+
+    public interface OnConnectivityChangedListener {
+        /**
+         * 网络状态变化，在主线程回调
+         */
+        void onConnectivityChanged(boolean connected);
+    }
+
+    private static volatile ConnectivityMonitor INSTANCE;
+
+    private final ConnectivityManager mConnectivityManager;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<OnConnectivityChangedListener> mListeners = new CopyOnWriteArrayList<>();
+    private final Set<Network> mAvailableNetworks = new HashSet<>();
+    private volatile boolean mConnected;
+
+    public static ConnectivityMonitor getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (ConnectivityMonitor.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new ConnectivityMonitor(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private ConnectivityMonitor(Context context) {
+        mConnectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        mConnected = queryConnected();
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+        mConnectivityManager.registerNetworkCallback(request, new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(@NonNull Network network) {
+                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                    updateNetwork(network, true);
+                }
+            }
+
+            @Override
+            public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities capabilities) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                    updateNetwork(network, capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED));
+                }
+            }
+
+            @Override
+            public void onLost(@NonNull Network network) {
+                updateNetwork(network, false);
+            }
+        });
+    }
+
+    /**
+     * 当前是否有可用网络
+     */
+    public boolean isConnected() {
+        return mConnected;
+    }
+
+    public void addListener(OnConnectivityChangedListener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(OnConnectivityChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    private void updateNetwork(Network network, boolean available) {
+        final boolean connected;
+        synchronized (mAvailableNetworks) {
+            if (available) {
+                mAvailableNetworks.add(network);
+            } else {
+                mAvailableNetworks.remove(network);
+            }
+            connected = !mAvailableNetworks.isEmpty();
+            if (connected == mConnected) {
+                return;
+            }
+            mConnected = connected;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (OnConnectivityChangedListener listener : mListeners) {
+                    listener.onConnectivityChanged(connected);
+                }
+            }
+        });
+    }
+
+    /**
+     * 只在初始化时查询一次，之后由回调更新
+     */
+    @SuppressWarnings("deprecation")
+    private boolean queryConnected() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            NetworkCapabilities capabilities = mConnectivityManager.getNetworkCapabilities(mConnectivityManager.getActiveNetwork());
+            return capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+        }
+        NetworkInfo networkInfo = mConnectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isAvailable();
+    }
+}
@@ -0,0 +1,17 @@
+package com.pay.android.billing.utils;
+
+import android.content.Context;
+
+public class NetworkUtils {
+
+    /**
+     * 读取{@link ConnectivityMonitor}缓存的网络状态，首次调用时注册网络监听
+     */
+    public static boolean isNetworkConnected(Context context) {
+        if (context != null) {
+            return ConnectivityMonitor.getInstance(context).isConnected();
+        }
+        return false;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,69 @@
+package com.pay.android.billing.utils;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * systrace/Perfetto埋点
+ * <p>
+ * 同步区间用于主线程上的调用(如调用BillingClient、分发回调)，必须在同一线程成对调用；
+ * 异步区间用于从发起请求到收到回调的整个过程，需要Android 10(API 29)及以上，低版本直接忽略。
+ * 默认关闭，关闭时只有一次静态变量判断。区间名称请使用常量，避免拼接字符串
+ */
+public class TraceUtils {
+
+    public static final String CONNECT = "Billing:connect";
+    public static final String QUERY_SKU_DETAILS = "Billing:querySkuDetails";
+    public static final String QUERY_PURCHASES = "Billing:queryPurchases";
+    public static final String QUERY_PURCHASE_HISTORY = "Billing:queryPurchaseHistory";
+    public static final String LAUNCH_BILLING_FLOW = "Billing:launchBillingFlow";
+    public static final String CONSUME = "Billing:consume";
+    public static final String ACKNOWLEDGE = "Billing:acknowledge";
+    public static final String PURCHASES_UPDATED = "Billing:onPurchasesUpdated";
+
+    private static final AtomicInteger COOKIE = new AtomicInteger();
+    private static boolean sEnabled;
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    public static void beginSection(String name) {
+        if (sEnabled) {
+            Trace.beginSection(name);
+        }
+    }
+
+    public static void endSection() {
+        if (sEnabled) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * @return 结束区间时使用的cookie，未开启时返回0
+     */
+    public static int beginAsyncSection(String name) {
+        if (!sEnabled || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return 0;
+        }
+        int cookie = COOKIE.incrementAndGet();
+        if (cookie == 0) {
+            cookie = COOKIE.incrementAndGet();
+        }
+        Trace.beginAsyncSection(name, cookie);
+        return cookie;
+    }
+
+    public static void endAsyncSection(String name, int cookie) {
+        if (cookie != 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(name, cookie);
+        }
+    }
+}
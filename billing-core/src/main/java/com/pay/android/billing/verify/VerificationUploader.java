@@ -0,0 +1,441 @@
+package com.pay.android.billing.verify;
+
+import com.pay.android.billing.model.PurchaseInfo;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 购买凭证服务端校验上传
+ * <p>
+ * {@link #enqueue(List)}把{@link PurchaseInfo}按批写入磁盘队列(gzip压缩的json数组)，无网络时保留在磁盘上，
+ * {@link #flush()}时以有限的并发上传所有批次。已在磁盘队列中或正在上传的purchaseToken不会重复入队，
+ * 每次连接和订阅周期检查都会重新提交历史订单，重复的订单只会上传一次。
+ * <p>
+ * 请求：POST endpoint，Content-Encoding: gzip，内容为PurchaseInfo的json数组<br>
+ * 响应：{"results":[{"purchaseToken":"...","valid":true}]}
+ * <p>
+ * 上传成功并解析响应后删除批次文件，通过{@link Callback}回调每笔订单的校验结果，响应中缺少的订单写入新的批次等待下一次flush；
+ * 响应无法解析、网络错误、5xx、408、429保留批次等待下一次flush，其他4xx视为批次无效直接删除，避免一直重复上传
+ */
+public class VerificationUploader {
+
+    public static final int DEFAULT_BATCH_SIZE = 20;
+    public static final int DEFAULT_MAX_CONCURRENCY = 2;
+    public static final int DEFAULT_TIMEOUT_MILLIS = 15000;
+
+    private static final String FILE_SUFFIX = ".batch";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public interface Callback {
+        /**
+         * 服务端校验结果，在callbackExecutor中回调
+         */
+        void onVerified(PurchaseInfo purchaseInfo, boolean valid);
+
+        /**
+         * 批次上传失败
+         *
+         * @param retained 批次是否保留在磁盘中等待下一次上传
+         */
+        void onUploadFailed(int purchaseCount, boolean retained, Exception e);
+    }
+
+    private final URL endpoint;
+    private final File queueDir;
+    private final Executor callbackExecutor;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService uploadExecutor;
+    private final Set<String> uploadingFiles = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // 磁盘队列中所有批次的purchaseToken，第一次读写队列时从磁盘重建
+    private final Set<String> queuedTokens = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // 只在ioExecutor中访问
+    private boolean tokensLoaded;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+    private Map<String, String> headers = new HashMap<>();
+    private long sequence;
+    private Callback callback;
+
+    /**
+     * @param endpoint         服务端校验接口
+     * @param queueDir         磁盘队列目录，如new File(context.getFilesDir(), "billing/verify")
+     * @param maxConcurrency   同时上传的批次数
+     * @param callbackExecutor 回调线程
+     */
+    public VerificationUploader(URL endpoint, File queueDir, int maxConcurrency, Executor callbackExecutor) {
+        this.endpoint = endpoint;
+        this.queueDir = queueDir;
+        this.callbackExecutor = callbackExecutor;
+        this.uploadExecutor = Executors.newFixedThreadPool(Math.max(1, maxConcurrency));
+    }
+
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * 每个批次最多包含的订单数
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public void setTimeoutMillis(int timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 附加的请求头，如鉴权信息
+     */
+    public void setHeaders(Map<String, String> headers) {
+        this.headers = new HashMap<>(headers);
+    }
+
+    /**
+     * 把订单写入磁盘队列，不会立即上传。purchaseToken已在队列中的订单会被忽略
+     */
+    public void enqueue(final List<PurchaseInfo> purchases) {
+        if (purchases == null || purchases.isEmpty()) {
+            return;
+        }
+        final List<PurchaseInfo> snapshot = new ArrayList<>(purchases);
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                loadQueuedTokens();
+                List<PurchaseInfo> copy = new ArrayList<>(snapshot.size());
+                for (PurchaseInfo purchase : snapshot) {
+                    String token = purchase.getPurchaseToken();
+                    if (token == null || queuedTokens.add(token)) {
+                        copy.add(purchase);
+                    }
+                }
+                queueDir.mkdirs();
+                for (int start = 0; start < copy.size(); start += batchSize) {
+                    List<PurchaseInfo> batch = copy.subList(start, Math.min(copy.size(), start + batchSize));
+                    try {
+                        writeBatch(batch);
+                    } catch (IOException | JSONException e) {
+                        removeTokens(batch);
+                        notifyUploadFailed(batch.size(), false, e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 上传磁盘队列中所有的批次，正在上传的批次不会重复上传
+     */
+    public void flush() {
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // 在安排上传之前重建，避免上传完成后又把已删除批次的token加回来
+                loadQueuedTokens();
+                File[] files = queueDir.listFiles();
+                if (files == null) {
+                    return;
+                }
+                Arrays.sort(files);
+                for (final File file : files) {
+                    if (!file.getName().endsWith(FILE_SUFFIX) || !uploadingFiles.add(file.getName())) {
+                        continue;
+                    }
+                    try {
+                        uploadExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                upload(file);
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        // 已调用shutdown
+                        uploadingFiles.remove(file.getName());
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 磁盘队列中等待上传的批次数
+     */
+    public int getQueuedBatchCount() {
+        File[] files = queueDir.listFiles();
+        int count = 0;
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(FILE_SUFFIX)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public void shutdown() {
+        ioExecutor.shutdown();
+        uploadExecutor.shutdown();
+    }
+
+    /**
+     * 从磁盘上的批次重建{@link #queuedTokens}，只在ioExecutor中执行一次
+     */
+    private void loadQueuedTokens() {
+        if (tokensLoaded) {
+            return;
+        }
+        tokensLoaded = true;
+        File[] files = queueDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.getName().endsWith(FILE_SUFFIX)) {
+                continue;
+            }
+            try {
+                for (PurchaseInfo purchase : parsePurchases(new String(gunzip(readFile(file)), UTF_8))) {
+                    queuedTokens.add(purchase.getPurchaseToken());
+                }
+            } catch (IOException | JSONException e) {
+                // 损坏的批次在上传时删除
+            }
+        }
+    }
+
+    private void removeTokens(List<PurchaseInfo> purchases) {
+        for (PurchaseInfo purchase : purchases) {
+            if (purchase.getPurchaseToken() != null) {
+                queuedTokens.remove(purchase.getPurchaseToken());
+            }
+        }
+    }
+
+    /**
+     * 在ioExecutor和上传线程中都会调用
+     */
+    private synchronized void writeBatch(List<PurchaseInfo> batch) throws IOException, JSONException {
+        JSONArray array = new JSONArray();
+        for (PurchaseInfo purchase : batch) {
+            array.put(toJson(purchase));
+        }
+        // 文件名按时间排序，保证先入队的批次先上传
+        String name = String.format(Locale.US, "%013d-%06d", System.currentTimeMillis(), sequence++ % 1000000);
+        File tmp = new File(queueDir, name + ".tmp");
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(tmp));
+        try {
+            out.write(array.toString().getBytes(UTF_8));
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(new File(queueDir, name + FILE_SUFFIX))) {
+            tmp.delete();
+            throw new IOException("rename " + tmp + " failed");
+        }
+    }
+
+    /**
+     * 在回调之前移除上传标记，保证回调中再次flush时可以重新上传保留的批次
+     */
+    private void upload(File file) {
+        List<PurchaseInfo> purchases;
+        byte[] body;
+        try {
+            body = readFile(file);
+            purchases = parsePurchases(new String(gunzip(body), UTF_8));
+        } catch (IOException | JSONException e) {
+            file.delete();
+            uploadingFiles.remove(file.getName());
+            notifyUploadFailed(0, false, e);
+            return;
+        }
+
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) endpoint.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+
+            int code = connection.getResponseCode();
+            if (code >= 200 && code < 300) {
+                String response = new String(readFully(connection.getInputStream()), UTF_8);
+                // 先解析响应再删除批次，解析失败时批次保留
+                Map<String, Boolean> verdicts = parseVerdicts(new JSONObject(response));
+                List<PurchaseInfo> verified = new ArrayList<>(purchases.size());
+                List<PurchaseInfo> missing = new ArrayList<>();
+                for (PurchaseInfo purchase : purchases) {
+                    if (verdicts.containsKey(purchase.getPurchaseToken())) {
+                        verified.add(purchase);
+                    } else {
+                        missing.add(purchase);
+                    }
+                }
+                if (!missing.isEmpty()) {
+                    writeBatch(missing);
+                }
+                file.delete();
+                uploadingFiles.remove(file.getName());
+                removeTokens(verified);
+                notifyVerdicts(verified, verdicts);
+            } else {
+                boolean retained = code >= 500 || code == 408 || code == 429;
+                if (!retained) {
+                    file.delete();
+                    removeTokens(purchases);
+                }
+                uploadingFiles.remove(file.getName());
+                notifyUploadFailed(purchases.size(), retained, new IOException("HTTP " + code));
+            }
+        } catch (IOException | JSONException e) {
+            uploadingFiles.remove(file.getName());
+            notifyUploadFailed(purchases.size(), file.exists(), e);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static Map<String, Boolean> parseVerdicts(JSONObject response) throws JSONException {
+        JSONArray results = response.getJSONArray("results");
+        Map<String, Boolean> verdicts = new HashMap<>();
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject result = results.getJSONObject(i);
+            verdicts.put(result.getString("purchaseToken"), result.optBoolean("valid"));
+        }
+        return verdicts;
+    }
+
+    private void notifyVerdicts(List<PurchaseInfo> purchases, Map<String, Boolean> verdicts) {
+        final Callback cb = callback;
+        if (cb == null) {
+            return;
+        }
+        for (final PurchaseInfo purchase : purchases) {
+            final boolean valid = verdicts.get(purchase.getPurchaseToken());
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    cb.onVerified(purchase, valid);
+                }
+            });
+        }
+    }
+
+    private void notifyUploadFailed(final int purchaseCount, final boolean retained, final Exception e) {
+        final Callback cb = callback;
+        if (cb == null) {
+            return;
+        }
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                cb.onUploadFailed(purchaseCount, retained, e);
+            }
+        });
+    }
+
+    private static JSONObject toJson(PurchaseInfo purchase) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("packageName", purchase.getPackageName());
+        json.put("sku", purchase.getSku());
+        json.put("skuType", purchase.getSkuType());
+        json.put("orderId", purchase.getOrderId());
+        json.put("purchaseToken", purchase.getPurchaseToken());
+        json.put("purchaseTime", purchase.getPurchaseTime());
+        json.put("purchaseState", purchase.getPurchaseState());
+        json.put("developerPayload", purchase.getDeveloperPayload());
+        json.put("originalJson", purchase.getOriginalJson());
+        json.put("signature", purchase.getSignature());
+        return json;
+    }
+
+    private static List<PurchaseInfo> parsePurchases(String json) throws JSONException {
+        JSONArray array = new JSONArray(json);
+        List<PurchaseInfo> purchases = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject item = array.getJSONObject(i);
+            PurchaseInfo purchase = new PurchaseInfo();
+            purchase.setPackageName(item.optString("packageName"));
+            purchase.setSku(item.optString("sku"));
+            purchase.setSkuType(item.optString("skuType", null));
+            purchase.setOrderId(item.optString("orderId"));
+            purchase.setPurchaseToken(item.optString("purchaseToken"));
+            purchase.setPurchaseTime(item.optLong("purchaseTime"));
+            purchase.setPurchaseState(item.optInt("purchaseState", 0));
+            purchase.setDeveloperPayload(item.optString("developerPayload"));
+            purchase.setOriginalJson(item.optString("originalJson"));
+            purchase.setSignature(item.optString("signature"));
+            purchases.add(purchase);
+        }
+        return purchases;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        return readFully(new FileInputStream(file));
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        return readFully(new GZIPInputStream(new ByteArrayInputStream(data)));
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.pay.android.billing;
+
+import com.android.billingclient.api.BillingResult;
+import com.android.billingclient.api.Purchase;
+import com.android.billingclient.api.PurchaseHistoryRecord;
+import com.android.billingclient.api.SkuDetails;
+import com.pay.android.billing.catalogue.SkuCatalogue;
+import com.pay.android.billing.entitlement.EntitlementStore;
+import com.pay.android.billing.listener.BaseBillingUpdateListener;
+import com.pay.android.billing.listener.BillingListenerRegistry;
+import com.pay.android.billing.subs.SubscriptionEntitlementEngine;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PurchaseUpdateProcessorTest {
+
+    private static final long NOW = 1600000000000L;
+    // 订单json中的purchaseState
+    private static final int PURCHASED = 0;
+    private static final int PENDING = 4;
+    private static final SkuCatalogue CATALOGUE = new SkuCatalogue.Builder()
+            .add("coins_100", SkuCatalogue.KIND_ONE_TIME)
+            .add("remove_ads", SkuCatalogue.KIND_PERMANENT)
+            .add("vip_month", SkuCatalogue.KIND_SUBS)
+            .build();
+
+    private final List<String> finalized = new ArrayList<>();
+    private int flushCount;
+    private int dispatchCount;
+    private int frameCount;
+
+    private final PurchaseUpdateProcessor.Finalizer finalizer = new PurchaseUpdateProcessor.Finalizer() {
+        @Override
+        public void finalizePurchase(Purchase purchase, byte kind) {
+            finalized.add(purchase.getPurchaseToken());
+        }
+
+        @Override
+        public void flush() {
+            flushCount++;
+        }
+    };
+    private final EntitlementStore entitlementStore = new EntitlementStore(new EntitlementStore.FrameScheduler() {
+        @Override
+        public void scheduleFrame(Runnable publish) {
+            frameCount++;
+        }
+    });
+    private final SubscriptionEntitlementEngine subsEngine = new SubscriptionEntitlementEngine();
+
+    @Test
+    public void process_classifiesOncePerPurchaseAndDispatches() throws JSONException {
+        PurchaseUpdateProcessor processor = newProcessor(2);
+        List<Purchase> purchases = new ArrayList<>();
+        purchases.add(purchase("coins_100", "coins", PURCHASED, true));
+        purchases.add(purchase("remove_ads", "ads", PURCHASED, false));
+        purchases.add(purchase("vip_month", "vip", PURCHASED, true));
+        purchases.add(purchase("remove_ads", "pending", PENDING, false));
+
+        processor.process(CATALOGUE, purchases, NOW);
+
+        // 消耗型每次都消耗，未确认的永久性商品需要确认，已确认的订阅和pending订单不处理
+        assertEquals(2, finalized.size());
+        assertEquals("coins", finalized.get(0));
+        assertEquals("ads", finalized.get(1));
+        assertEquals(1, flushCount);
+        assertEquals(2, dispatchCount);
+        assertTrue(subsEngine.isEntitled("vip_month"));
+        // 同一批订单只请求一次发布
+        assertEquals(1, frameCount);
+    }
+
+    /**
+     * 恢复购买时重复回调已处理过的订单：从分类、权益更新到分发给监听，每个订单的分配应接近0字节
+     */
+    @Test
+    public void process_allocatesNothingPerProcessedPurchase() throws JSONException {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        if (!threadBean.isThreadAllocatedMemorySupported() || !threadBean.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+        subsEngine.setSubscriptionPeriod("vip_month", "P1M");
+        PurchaseUpdateProcessor processor = newProcessor(3);
+        List<Purchase> purchases = new ArrayList<>();
+        purchases.add(purchase("vip_month", "vip", PURCHASED, true));
+        for (int i = 0; i < 499; i++) {
+            purchases.add(purchase("remove_ads", "ads_" + i, PURCHASED, true));
+        }
+        long threadId = Thread.currentThread().getId();
+
+        // 预热，避免把解释执行、类加载和首次插入权益计入
+        for (int i = 0; i < 400; i++) {
+            processor.process(CATALOGUE, purchases, NOW + i);
+        }
+        int rounds = 2000;
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < rounds; i++) {
+            processor.process(CATALOGUE, purchases, NOW + i);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        double perPurchase = (double) allocated / ((long) rounds * purchases.size());
+        assertTrue("allocated " + perPurchase + " bytes per purchase", perPurchase < 0.1);
+        assertTrue(finalized.isEmpty());
+        assertEquals(3L * (400 + rounds), dispatchCount);
+    }
+
+    private PurchaseUpdateProcessor newProcessor(int listenerCount) {
+        BillingListenerRegistry listeners = new BillingListenerRegistry();
+        for (int i = 0; i < listenerCount; i++) {
+            listeners.put("listener_" + i, new CountingListener(), null);
+        }
+        return new PurchaseUpdateProcessor(listeners, subsEngine, entitlementStore, finalizer);
+    }
+
+    private static Purchase purchase(String sku, String token, int purchaseState, boolean acknowledged)
+            throws JSONException {
+        return new Purchase("{\"productId\":\"" + sku + "\",\"purchaseToken\":\"" + token
+                + "\",\"purchaseState\":" + purchaseState + ",\"purchaseTime\":" + (NOW - 1000)
+                + ",\"acknowledged\":" + acknowledged + ",\"autoRenewing\":true}", "sig");
+    }
+
+    private class CountingListener extends BaseBillingUpdateListener {
+        @Override
+        public void onPurchasesUpdated(List<Purchase> purchases) {
+            dispatchCount++;
+        }
+
+        @Override
+        public void onBillingClientSetupFinished() {
+        }
+
+        @Override
+        public void onBillingServiceDisconnected() {
+        }
+
+        @Override
+        public void onQuerySkuDetailSuccess(String skuType, List<SkuDetails> skuDetailsList) {
+        }
+
+        @Override
+        public void onQuerySkuDetailFailure(int errorCode, String message) {
+        }
+
+        @Override
+        public void onConsumeFinished(String token, BillingResult result) {
+        }
+
+        @Override
+        public void onAcknowledgeSubsFinish(BillingResult result) {
+        }
+
+        @Override
+        public void onAcknowledgeInappFinish(BillingResult result) {
+        }
+
+        @Override
+        public void onPurchaseSubsOwned(List<Purchase> purchases) {
+        }
+
+        @Override
+        public void onPurchaseInappOwned(List<Purchase> purchases) {
+        }
+
+        @Override
+        public void onPurchaseHistoryResponse(BillingResult billingResult, List<PurchaseHistoryRecord> list) {
+        }
+
+        @Override
+        public void onPurchasesCancel() {
+        }
+
+        @Override
+        public void onPurchasesFailure(int errorCode, String message) {
+        }
+    }
+}
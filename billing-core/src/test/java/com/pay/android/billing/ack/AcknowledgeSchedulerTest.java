@@ -0,0 +1,156 @@
+package com.pay.android.billing.ack;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AcknowledgeSchedulerTest {
+
+    private static final long HOUR = 60L * 60 * 1000;
+    private static final long NOW = 100L * 24 * HOUR;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private File file;
+    private final List<String> finalized = new ArrayList<>();
+    private final AcknowledgeScheduler.Finalizer finalizer = new AcknowledgeScheduler.Finalizer() {
+        @Override
+        public void finalizePurchase(AcknowledgeScheduler.PendingPurchase purchase) {
+            finalized.add(purchase.getPurchaseToken());
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("pending_acknowledge", ".dat");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void flush_dispatchesWholeBatchByDeadline() {
+        AcknowledgeScheduler scheduler = new AcknowledgeScheduler(file, DIRECT, finalizer);
+        scheduler.setMaxInFlight(1);
+        scheduler.submit("late", "sku", "inapp", NOW - HOUR);
+        scheduler.submit("early", "sku", "inapp", NOW - 48 * HOUR);
+        scheduler.submit("mid", "sku", "inapp", NOW - 24 * HOUR);
+        assertTrue(finalized.isEmpty());
+
+        scheduler.flush();
+        assertEquals(Arrays.asList("early"), finalized);
+        scheduler.onFinished("early", true);
+        scheduler.onFinished("mid", true);
+        assertEquals(Arrays.asList("early", "mid", "late"), finalized);
+    }
+
+    @Test
+    public void load_restoresPersistedQueue() throws IOException {
+        AcknowledgeScheduler scheduler = new AcknowledgeScheduler(file, DIRECT, finalizer);
+        scheduler.setMaxInFlight(1);
+        scheduler.submit("token-1", "coins", "inapp", NOW - HOUR);
+        scheduler.submit("token-2", "vip", "subs", NOW - 2 * HOUR);
+        scheduler.flush();
+        scheduler.onFinished("token-2", true);
+        scheduler.persist();
+
+        finalized.clear();
+        AcknowledgeScheduler restored = new AcknowledgeScheduler(file, DIRECT, finalizer);
+        restored.load(DIRECT, null);
+        assertEquals(1, restored.getPendingCount());
+        assertEquals(Arrays.asList("token-1"), finalized);
+    }
+
+    @Test
+    public void load_mergesSubmitsMadeWhileReading() {
+        AcknowledgeScheduler scheduler = new AcknowledgeScheduler(file, DIRECT, finalizer);
+        scheduler.submit("saved", "sku", "inapp", NOW - HOUR);
+        scheduler.persist();
+
+        final List<Runnable> io = new ArrayList<>();
+        Executor deferred = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                io.add(command);
+            }
+        };
+        AcknowledgeScheduler restored = new AcknowledgeScheduler(file, deferred, finalizer);
+        restored.load(DIRECT, null);
+        restored.submit("new", "sku", "inapp", NOW - 2 * HOUR);
+        restored.flush();
+        // 读取完成前不写文件，只有读取任务
+        assertEquals(1, io.size());
+        assertEquals(Arrays.asList("new"), finalized);
+
+        io.remove(0).run();
+        assertEquals(2, restored.getPendingCount());
+        assertEquals(Arrays.asList("new", "saved"), finalized);
+        // 合并后保存
+        assertEquals(1, io.size());
+    }
+
+    @Test
+    public void checkDeadlines_alarmsOnceAndKeepsExpiredFirst() throws IOException {
+        AcknowledgeScheduler scheduler = new AcknowledgeScheduler(file, DIRECT, finalizer);
+        scheduler.setMaxInFlight(1);
+        final List<String> alarmed = new ArrayList<>();
+        scheduler.setOnDeadlineApproachingListener(new AcknowledgeScheduler.OnDeadlineApproachingListener() {
+            @Override
+            public void onDeadlineApproaching(AcknowledgeScheduler.PendingPurchase purchase) {
+                alarmed.add(purchase.getPurchaseToken());
+            }
+        });
+        scheduler.submit("fresh", "sku", "inapp", NOW - HOUR);
+        scheduler.submit("approaching", "sku", "inapp", NOW - 60 * HOUR);
+        scheduler.submit("expired", "sku", "inapp", NOW - 73 * HOUR);
+
+        long next = scheduler.checkDeadlines(NOW);
+        Collections.sort(alarmed);
+        assertEquals(Arrays.asList("approaching", "expired"), alarmed);
+        // 本地时钟认为已过期的订单也不会移除，等待Google Play的结果
+        assertEquals(3, scheduler.getPendingCount());
+        // 下一次检查：fresh的提醒时间
+        assertEquals(NOW - HOUR + AcknowledgeScheduler.ACKNOWLEDGE_WINDOW_MILLIS
+                - AcknowledgeScheduler.DEFAULT_ALARM_BEFORE_DEADLINE_MILLIS, next);
+
+        scheduler.checkDeadlines(NOW + HOUR);
+        assertEquals(2, alarmed.size());
+
+        // 提醒状态随队列保存，重启后不会重复提醒
+        AcknowledgeScheduler restored = new AcknowledgeScheduler(file, DIRECT, finalizer);
+        restored.setOnDeadlineApproachingListener(new AcknowledgeScheduler.OnDeadlineApproachingListener() {
+            @Override
+            public void onDeadlineApproaching(AcknowledgeScheduler.PendingPurchase purchase) {
+                alarmed.add(purchase.getPurchaseToken());
+            }
+        });
+        restored.load(DIRECT, null);
+        restored.checkDeadlines(NOW + HOUR);
+        assertEquals(2, alarmed.size());
+        finalized.clear();
+
+        scheduler.flush();
+        assertEquals(Arrays.asList("expired"), finalized);
+        scheduler.onFinished("expired", true);
+        assertEquals(Arrays.asList("expired", "approaching"), finalized);
+    }
+}
@@ -0,0 +1,75 @@
+package com.pay.android.billing.catalogue;
+
+import com.android.billingclient.api.BillingClient;
+import com.android.billingclient.api.Purchase;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PurchaseClassifierTest {
+
+    private static final SkuCatalogue CATALOGUE = new SkuCatalogue.Builder()
+            .add("coins_100", SkuCatalogue.KIND_ONE_TIME)
+            .add("remove_ads", SkuCatalogue.KIND_PERMANENT)
+            .add("vip_year", SkuCatalogue.KIND_SUBS)
+            .build();
+
+    @Test
+    public void classify_matchesFinalizeRules() {
+        int purchased = Purchase.PurchaseState.PURCHASED;
+        assertEquals(PurchaseClassifier.ACTION_CONSUME, PurchaseClassifier.classify(SkuCatalogue.KIND_ONE_TIME, purchased, true));
+        assertEquals(PurchaseClassifier.ACTION_ACKNOWLEDGE, PurchaseClassifier.classify(SkuCatalogue.KIND_PERMANENT, purchased, false));
+        assertEquals(PurchaseClassifier.ACTION_NONE, PurchaseClassifier.classify(SkuCatalogue.KIND_PERMANENT, purchased, true));
+        assertEquals(PurchaseClassifier.ACTION_ACKNOWLEDGE, PurchaseClassifier.classify(SkuCatalogue.KIND_SUBS, purchased, false));
+        assertEquals(PurchaseClassifier.ACTION_NONE, PurchaseClassifier.classify(SkuCatalogue.KIND_SUBS, Purchase.PurchaseState.PENDING, false));
+        assertEquals(PurchaseClassifier.ACTION_NONE, PurchaseClassifier.classify((byte) 0, purchased, false));
+
+        // 查询结果已知类型时，目录外的sku按该类型的默认种类处理
+        assertEquals(SkuCatalogue.KIND_ONE_TIME, PurchaseClassifier.kindOf(CATALOGUE, "unknown", BillingClient.SkuType.INAPP));
+        assertEquals(SkuCatalogue.KIND_PERMANENT, PurchaseClassifier.kindOf(CATALOGUE, "remove_ads", BillingClient.SkuType.INAPP));
+        assertEquals(SkuCatalogue.KIND_SUBS, PurchaseClassifier.kindOf(CATALOGUE, "unknown", BillingClient.SkuType.SUBS));
+        assertEquals(0, PurchaseClassifier.kindOf(CATALOGUE, "unknown", null));
+    }
+
+    /**
+     * 目录查询和分类的分配基准：每个订单的分配应接近0字节。只覆盖分类，不包含消耗/确认请求本身
+     */
+    @Test
+    public void classify_allocatesNothingPerPurchase() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        if (!threadBean.isThreadAllocatedMemorySupported() || !threadBean.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+        String[] skus = {"coins_100", "remove_ads", "vip_year", "unknown"};
+        int[] states = {Purchase.PurchaseState.PURCHASED, Purchase.PurchaseState.PENDING};
+        long threadId = Thread.currentThread().getId();
+
+        // 预热，避免把解释执行和类加载计入
+        long sink = classifyBatch(skus, states, 200000);
+        int purchases = 1000000;
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        sink += classifyBatch(skus, states, purchases);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        double perPurchase = (double) allocated / purchases;
+        assertTrue("allocated " + perPurchase + " bytes per purchase, checksum " + sink, perPurchase < 0.1);
+    }
+
+    private static long classifyBatch(String[] skus, int[] states, int count) {
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            byte kind = CATALOGUE.getKind(skus[i & 3]);
+            sum += PurchaseClassifier.classify(kind, states[(i >> 2) & 1], (i & 8) != 0);
+        }
+        return sum;
+    }
+}
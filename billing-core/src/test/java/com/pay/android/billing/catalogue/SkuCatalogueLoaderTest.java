@@ -0,0 +1,67 @@
+package com.pay.android.billing.catalogue;
+
+import com.android.billingclient.api.BillingClient;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SkuCatalogueLoaderTest {
+
+    @Test
+    public void load_roundTripsThroughMappedFile() throws IOException {
+        SkuCatalogue catalogue = new SkuCatalogue.Builder()
+                .setVersion(7)
+                .add("coins_100", SkuCatalogue.KIND_ONE_TIME)
+                .add("remove_ads", SkuCatalogue.KIND_PERMANENT)
+                .add("vip_year", SkuCatalogue.KIND_SUBS)
+                .build();
+        File file = File.createTempFile("catalogue", ".bcat");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                SkuCatalogueLoader.write(catalogue, out);
+            } finally {
+                out.close();
+            }
+
+            SkuCatalogue loaded = SkuCatalogueLoader.load(file);
+            assertEquals(7, loaded.getVersion());
+            assertEquals(3, loaded.size());
+            assertEquals(BillingClient.SkuType.INAPP, loaded.getSkuType("coins_100"));
+            assertEquals(BillingClient.SkuType.SUBS, loaded.getSkuType("vip_year"));
+            assertNull(loaded.getSkuType("unknown"));
+            assertTrue(loaded.isPermanent("remove_ads"));
+            assertFalse(loaded.isPermanent("coins_100"));
+            assertEquals(1, loaded.getId("remove_ads"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void parse_rejectsTruncatedFile() throws IOException {
+        SkuCatalogue catalogue = new SkuCatalogue.Builder()
+                .setVersion(1)
+                .add("coins_100", SkuCatalogue.KIND_ONE_TIME)
+                .build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SkuCatalogueLoader.write(catalogue, out);
+        byte[] bytes = out.toByteArray();
+        try {
+            SkuCatalogueLoader.parse(ByteBuffer.wrap(bytes, 0, bytes.length - 3));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.pay.android.billing.entitlement;
+
+import com.android.billingclient.api.Purchase;
+import com.pay.android.billing.subs.SubscriptionState;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 使用手动触发的{@link EntitlementStore.FrameScheduler}模拟帧回调
+ */
+public class EntitlementStoreTest {
+
+    // 订单json中的purchaseState
+    private static final int PURCHASED = 0;
+    private static final int PENDING = 4;
+
+    private final List<Runnable> frames = new ArrayList<>();
+    private final EntitlementStore store = new EntitlementStore(new EntitlementStore.FrameScheduler() {
+        @Override
+        public void scheduleFrame(Runnable publish) {
+            frames.add(publish);
+        }
+    });
+
+    @Test
+    public void changesInOneFrame_publishOnce() throws JSONException {
+        List<EntitlementSnapshot> published = observe();
+        published.clear();
+
+        store.onInappPurchase(purchase("remove_ads", "ads", PURCHASED));
+        store.onInappPurchase(purchase("coins_100", "coins", PENDING));
+        store.onSubscriptionStateChanged("vip_month", SubscriptionState.ACTIVE);
+        assertEquals(1, frames.size());
+        assertTrue(published.isEmpty());
+
+        runFrames();
+        assertEquals(1, published.size());
+        EntitlementSnapshot snapshot = published.get(0);
+        assertEquals(1, snapshot.getVersion());
+        assertTrue(snapshot.isEntitled("remove_ads"));
+        assertFalse(snapshot.isEntitled("coins_100"));
+        assertTrue(snapshot.getPendingInappSkus().contains("coins_100"));
+        assertTrue(snapshot.hasActiveSubscription());
+        assertSame(snapshot, store.getSnapshot());
+
+        // 发布后的变化请求新的一帧
+        store.onConsumed("ads");
+        assertEquals(1, frames.size());
+        runFrames();
+        assertEquals(2, published.size());
+        assertFalse(published.get(1).isEntitled("remove_ads"));
+    }
+
+    @Test
+    public void unchangedContent_doesNotNotify() throws JSONException {
+        store.syncInapp(Arrays.asList(purchase("remove_ads", "ads", PURCHASED)));
+        runFrames();
+        List<EntitlementSnapshot> published = observe();
+        published.clear();
+        EntitlementSnapshot snapshot = store.getSnapshot();
+
+        // 同一商品重复回调、token不同但sku相同，内容都没有变化
+        store.onInappPurchase(purchase("remove_ads", "ads", PURCHASED));
+        store.syncInapp(Arrays.asList(purchase("remove_ads", "ads_restored", PURCHASED)));
+        store.onConsumed("unknown");
+        runFrames();
+
+        assertTrue(published.isEmpty());
+        assertSame(snapshot, store.getSnapshot());
+
+        // 没有变化时直接发布也不回调
+        store.publish();
+        assertTrue(published.isEmpty());
+    }
+
+    @Test
+    public void addObserver_receivesCurrentSnapshot() throws JSONException {
+        List<EntitlementSnapshot> first = observe();
+        assertEquals(1, first.size());
+        assertSame(EntitlementSnapshot.EMPTY, first.get(0));
+
+        store.onInappPurchase(purchase("remove_ads", "ads", PURCHASED));
+        runFrames();
+
+        List<EntitlementSnapshot> late = observe();
+        assertEquals(1, late.size());
+        assertSame(store.getSnapshot(), late.get(0));
+        assertTrue(late.get(0).isEntitled("remove_ads"));
+    }
+
+    private List<EntitlementSnapshot> observe() {
+        final List<EntitlementSnapshot> published = new ArrayList<>();
+        store.addObserver(new EntitlementObserver() {
+            @Override
+            public void onEntitlementChanged(EntitlementSnapshot snapshot) {
+                published.add(snapshot);
+            }
+        });
+        return published;
+    }
+
+    private void runFrames() {
+        List<Runnable> pending = new ArrayList<>(frames);
+        frames.clear();
+        for (Runnable frame : pending) {
+            frame.run();
+        }
+    }
+
+    private static Purchase purchase(String sku, String token, int purchaseState) throws JSONException {
+        return new Purchase("{\"productId\":\"" + sku + "\",\"purchaseToken\":\"" + token
+                + "\",\"purchaseState\":" + purchaseState + "}", "sig");
+    }
+}
@@ -0,0 +1,81 @@
+package com.pay.android.billing.history;
+
+import com.android.billingclient.api.PurchaseHistoryRecord;
+
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PurchaseHistorySnapshotTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("purchase_history_", ".dat");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void merge_reportsAddedAndChangedRecords() throws JSONException {
+        PurchaseHistorySnapshot snapshot = new PurchaseHistorySnapshot(file);
+        List<PurchaseHistoryRecord> added = new ArrayList<>();
+        List<PurchaseHistoryRecord> changed = new ArrayList<>();
+
+        assertTrue(snapshot.merge(Arrays.asList(record("token-1", 1000, "a"), record("token-2", 2000, "a")), added, changed));
+        assertEquals(2, added.size());
+        assertTrue(changed.isEmpty());
+
+        added.clear();
+        assertTrue(snapshot.merge(Arrays.asList(record("token-1", 1000, "b"), record("token-2", 2000, "a"),
+                record("token-3", 3000, "a")), added, changed));
+        assertEquals("token-3", added.get(0).getPurchaseToken());
+        assertEquals(1, changed.size());
+        assertEquals("token-1", changed.get(0).getPurchaseToken());
+
+        added.clear();
+        changed.clear();
+        assertFalse(snapshot.merge(Arrays.asList(record("token-1", 1000, "b")), added, changed));
+        assertFalse(snapshot.merge(null, added, changed));
+    }
+
+    @Test
+    public void save_roundTripsThroughLoad() throws JSONException, IOException {
+        PurchaseHistorySnapshot snapshot = new PurchaseHistorySnapshot(file);
+        List<PurchaseHistoryRecord> records = Arrays.asList(record("token-1", 1000, "a"), record("token-2", 2000, "a"));
+        snapshot.merge(records, new ArrayList<PurchaseHistoryRecord>(), new ArrayList<PurchaseHistoryRecord>());
+        snapshot.save();
+
+        PurchaseHistorySnapshot loaded = new PurchaseHistorySnapshot(file);
+        loaded.load();
+        assertEquals(2, loaded.size());
+        List<PurchaseHistoryRecord> added = new ArrayList<>();
+        List<PurchaseHistoryRecord> changed = new ArrayList<>();
+        assertFalse(loaded.merge(records, added, changed));
+
+        loaded.clear();
+        assertFalse(file.exists());
+        assertEquals(0, loaded.size());
+    }
+
+    private static PurchaseHistoryRecord record(String token, long purchaseTime, String payload) throws JSONException {
+        return new PurchaseHistoryRecord("{\"productId\":\"coins\",\"purchaseToken\":\"" + token
+                + "\",\"purchaseTime\":" + purchaseTime + ",\"developerPayload\":\"" + payload + "\"}", "");
+    }
+}
@@ -0,0 +1,70 @@
+package com.pay.android.billing.model;
+
+import com.pay.android.billing.catalogue.SkuCatalogue;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompactPurchaseStoreTest {
+
+    private static final SkuCatalogue CATALOGUE = new SkuCatalogue.Builder()
+            .add("coins_100", SkuCatalogue.KIND_ONE_TIME)
+            .add("vip_year", SkuCatalogue.KIND_SUBS)
+            .build();
+
+    @Test
+    public void add_roundTripsAndSharesRepeatedFields() {
+        CompactPurchaseStore store = new CompactPurchaseStore(CATALOGUE, new StringPool(), 1);
+        for (int i = 0; i < 100; i++) {
+            store.add(purchase(i % 2 == 0 ? "vip_year" : "legacy_pack", i));
+        }
+        assertEquals(100, store.size());
+
+        PurchaseInfo first = store.get(0);
+        assertEquals("vip_year", first.getSku());
+        assertEquals("token_0", first.getPurchaseToken());
+        assertEquals("{\"productId\":\"vip_year\",\"purchaseToken\":\"token_0\",\"note\":\"订阅\"}", first.getOriginalJson());
+        assertEquals("sig_0", first.getSignature());
+        assertEquals(1, first.getPurchaseState());
+        assertEquals(1000L, first.getPurchaseTime());
+        assertEquals(CATALOGUE.getId("vip_year"), store.getSkuId(0));
+
+        // 目录外的sku使用负数id
+        assertEquals("legacy_pack", store.getSku(1));
+        assertTrue(store.getSkuId(1) < 0);
+        assertEquals(store.getSkuId(1), store.getSkuId(99));
+
+        assertSame(store.get(0).getPackageName(), store.get(99).getPackageName());
+        assertSame(store.get(0).getDeveloperPayload(), store.get(99).getDeveloperPayload());
+    }
+
+    @Test
+    public void intern_stopsPoolingWhenFull() {
+        StringPool pool = new StringPool(1);
+        String a = pool.intern(new String("com.example.app"));
+        assertSame(a, pool.intern(new String("com.example.app")));
+        String b = new String("other");
+        assertSame(b, pool.intern(b));
+        assertEquals(1, pool.size());
+        assertNull(pool.intern(null));
+    }
+
+    private static PurchaseInfo purchase(String sku, int i) {
+        PurchaseInfo purchaseInfo = new PurchaseInfo();
+        purchaseInfo.setSku(sku);
+        purchaseInfo.setPurchaseState(1);
+        purchaseInfo.setPurchaseTime(1000L + i);
+        purchaseInfo.setPurchaseToken("token_" + i);
+        purchaseInfo.setOrderId("GPA." + i);
+        // 每条记录都是新的字符串实例，模拟从json解析
+        purchaseInfo.setPackageName(new String("com.example.app"));
+        purchaseInfo.setDeveloperPayload(new String("campaign_a"));
+        purchaseInfo.setOriginalJson("{\"productId\":\"" + sku + "\",\"purchaseToken\":\"token_" + i + "\",\"note\":\"订阅\"}");
+        purchaseInfo.setSignature("sig_" + i);
+        return purchaseInfo;
+    }
+}
@@ -0,0 +1,54 @@
+package com.pay.android.billing.request;
+
+import com.android.billingclient.api.BillingClient;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultRetryPolicyTest {
+
+    @Test
+    public void isRetryable_onlyTransientResponseCodes() {
+        DefaultRetryPolicy policy = new DefaultRetryPolicy();
+
+        assertTrue(policy.isRetryable(BillingClient.BillingResponseCode.SERVICE_DISCONNECTED));
+        assertTrue(policy.isRetryable(BillingClient.BillingResponseCode.SERVICE_UNAVAILABLE));
+        assertTrue(policy.isRetryable(BillingClient.BillingResponseCode.ERROR));
+
+        assertFalse(policy.isRetryable(BillingClient.BillingResponseCode.OK));
+        assertFalse(policy.isRetryable(BillingClient.BillingResponseCode.USER_CANCELED));
+        assertFalse(policy.isRetryable(BillingClient.BillingResponseCode.ITEM_UNAVAILABLE));
+        assertFalse(policy.isRetryable(BillingClient.BillingResponseCode.DEVELOPER_ERROR));
+        assertFalse(policy.isRetryable(BillingClient.BillingResponseCode.ITEM_ALREADY_OWNED));
+        assertFalse(policy.isRetryable(BillingClient.BillingResponseCode.ITEM_NOT_OWNED));
+    }
+
+    @Test
+    public void getRetryDelayMillis_staysUnderExponentialCeiling() {
+        long base = 100;
+        long max = 1000;
+        DefaultRetryPolicy policy = new DefaultRetryPolicy(5, base, max);
+
+        for (int retry = 1; retry <= 40; retry++) {
+            long ceiling = Math.min(max, base << Math.min(retry - 1, 20));
+            long maxSeen = 0;
+            for (int i = 0; i < 2000; i++) {
+                long delay = policy.getRetryDelayMillis(retry);
+                assertTrue("retry " + retry + " delay " + delay, delay >= 0 && delay <= ceiling);
+                maxSeen = Math.max(maxSeen, delay);
+            }
+            // 抖动覆盖整个区间，而不是固定取上限
+            assertTrue("retry " + retry + " max " + maxSeen, maxSeen > ceiling / 2);
+        }
+    }
+
+    @Test
+    public void getMaxRetries_returnsConfiguredValue() {
+        assertEquals(DefaultRetryPolicy.DEFAULT_MAX_RETRIES, new DefaultRetryPolicy().getMaxRetries());
+        assertEquals(0, new DefaultRetryPolicy(0, 100, 1000).getMaxRetries());
+        assertEquals(7, new DefaultRetryPolicy(7, 100, 1000).getMaxRetries());
+    }
+}
@@ -0,0 +1,124 @@
+package com.pay.android.billing.request;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class RequestSchedulerTest {
+
+    private final List<String> executed = new ArrayList<>();
+    private long time;
+    private final RequestScheduler.Clock clock = new RequestScheduler.Clock() {
+        @Override
+        public long now() {
+            return time;
+        }
+    };
+
+    @Test
+    public void drain_runsHigherLanesFirst() {
+        RequestScheduler scheduler = new RequestScheduler(clock);
+        scheduler.setRate(RequestScheduler.TYPE_QUERY, 1, 1);
+        scheduler.setRate(RequestScheduler.TYPE_MUTATION, 1, 1);
+        scheduler.enqueue(RequestScheduler.LANE_BACKGROUND_REFRESH, RequestScheduler.TYPE_QUERY, task("refresh"));
+        scheduler.enqueue(RequestScheduler.LANE_INTERACTIVE_QUERY, RequestScheduler.TYPE_QUERY, task("query"));
+        scheduler.enqueue(RequestScheduler.LANE_FINALIZATION, RequestScheduler.TYPE_MUTATION, task("consume"));
+
+        // 每类请求只有一个令牌：consume使用修改类令牌，query抢在refresh之前使用查询类令牌
+        assertEquals(1000, drain(scheduler, 0));
+        assertEquals(Arrays.asList("consume", "query"), executed);
+
+        drain(scheduler, 1000);
+        assertEquals(Arrays.asList("consume", "query", "refresh"), executed);
+        assertEquals(1000, scheduler.getLaneMetrics(RequestScheduler.LANE_BACKGROUND_REFRESH).getMaxQueueTimeMillis());
+    }
+
+    @Test
+    public void drain_agesLowerLanesToAvoidStarvation() {
+        RequestScheduler scheduler = new RequestScheduler(clock);
+        scheduler.setRate(RequestScheduler.TYPE_QUERY, 1, 1);
+        scheduler.setAgingMillis(1000);
+        scheduler.enqueue(RequestScheduler.LANE_BACKGROUND_REFRESH, RequestScheduler.TYPE_QUERY, task("refresh"));
+        drain(scheduler, 0);
+        // 令牌已被refresh用完，之后等待的请求按得分竞争
+        time = 0;
+        scheduler.enqueue(RequestScheduler.LANE_BACKGROUND_REFRESH, RequestScheduler.TYPE_QUERY, task("old refresh"));
+        time = 900;
+        scheduler.enqueue(RequestScheduler.LANE_INTERACTIVE_QUERY, RequestScheduler.TYPE_QUERY, task("new query"));
+
+        // old refresh得分3000-1000=2000，new query得分2000-100=1900
+        drain(scheduler, 1000);
+        assertEquals(Arrays.asList("refresh", "new query"), executed);
+
+        time = 1900;
+        scheduler.enqueue(RequestScheduler.LANE_INTERACTIVE_QUERY, RequestScheduler.TYPE_QUERY, task("late query"));
+        // old refresh得分3000-2000=1000，late query得分2000-100=1900
+        drain(scheduler, 2000);
+        assertEquals(Arrays.asList("refresh", "new query", "old refresh"), executed);
+    }
+
+    @Test
+    public void drain_countsOnlyTokenWaitsAsThrottled() {
+        final RequestScheduler scheduler = new RequestScheduler(clock);
+        scheduler.setRate(RequestScheduler.TYPE_MUTATION, 1, 1);
+        scheduler.enqueue(RequestScheduler.LANE_FINALIZATION, RequestScheduler.TYPE_MUTATION, new Runnable() {
+            @Override
+            public void run() {
+                executed.add("consume 1");
+                // 执行耗时100ms，执行过程中提交新的请求
+                time += 100;
+                scheduler.enqueue(RequestScheduler.LANE_INTERACTIVE_QUERY, RequestScheduler.TYPE_QUERY, task("nested query"));
+            }
+        });
+        scheduler.enqueue(RequestScheduler.LANE_INTERACTIVE_QUERY, RequestScheduler.TYPE_QUERY, task("query"));
+        scheduler.enqueue(RequestScheduler.LANE_FINALIZATION, RequestScheduler.TYPE_MUTATION, task("consume 2"));
+
+        drain(scheduler, 0);
+        assertEquals(Arrays.asList("consume 1", "query", "nested query"), executed);
+        drain(scheduler, 1100);
+        assertEquals("consume 2", executed.get(3));
+
+        // query在高优先级通道后面等待了100ms，但查询类令牌充足，不计为被限流
+        RateLimiterMetrics query = scheduler.getMetrics(RequestScheduler.TYPE_QUERY);
+        assertEquals(0, query.getThrottledCount());
+        assertEquals(100, scheduler.getLaneMetrics(RequestScheduler.LANE_INTERACTIVE_QUERY).getMaxQueueTimeMillis());
+
+        // consume 2从令牌耗尽(100ms)开始计算限流时间
+        RateLimiterMetrics mutation = scheduler.getMetrics(RequestScheduler.TYPE_MUTATION);
+        assertEquals(1, mutation.getThrottledCount());
+        assertEquals(1000, mutation.getMaxThrottleDelayMillis());
+    }
+
+    @Test
+    public void takeAll_returnsQueuedRequestsByLane() {
+        RequestScheduler scheduler = new RequestScheduler(clock);
+        scheduler.enqueue(RequestScheduler.LANE_BACKGROUND_REFRESH, RequestScheduler.TYPE_QUERY, task("refresh"));
+        scheduler.enqueue(RequestScheduler.LANE_FINALIZATION, RequestScheduler.TYPE_MUTATION, task("consume"));
+        scheduler.enqueue(RequestScheduler.LANE_FINALIZATION, RequestScheduler.TYPE_MUTATION, task("acknowledge"));
+
+        for (Runnable runnable : scheduler.takeAll()) {
+            runnable.run();
+        }
+        assertEquals(Arrays.asList("consume", "acknowledge", "refresh"), executed);
+        assertEquals(0, scheduler.getQueueDepth());
+        assertEquals(0, scheduler.getMetrics(RequestScheduler.TYPE_MUTATION).getQueueDepth());
+    }
+
+    private long drain(RequestScheduler scheduler, long now) {
+        time = now;
+        return scheduler.drain();
+    }
+
+    private Runnable task(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                executed.add(name);
+            }
+        };
+    }
+}
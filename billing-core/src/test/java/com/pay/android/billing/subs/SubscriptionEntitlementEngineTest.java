@@ -0,0 +1,175 @@
+package com.pay.android.billing.subs;
+
+import com.android.billingclient.api.Purchase;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SubscriptionEntitlementEngineTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @Test
+    public void nextBoundaryAfter_rollsMonthEndsFromStart() {
+        SubscriptionPeriod monthly = SubscriptionPeriod.parse("P1M");
+        long start = utc(2024, Calendar.JANUARY, 31);
+
+        assertEquals(utc(2024, Calendar.FEBRUARY, 29), monthly.nextBoundaryAfter(start, utc(2024, Calendar.FEBRUARY, 10)));
+        // 每次从开始时间计算，3月不会因为2月29日而提前
+        assertEquals(utc(2024, Calendar.MARCH, 31), monthly.nextBoundaryAfter(start, utc(2024, Calendar.MARCH, 1)));
+        assertEquals(utc(2028, Calendar.JUNE, 30), monthly.nextBoundaryAfter(start, utc(2028, Calendar.JUNE, 15)));
+        // 正好在周期边界上时取下一个周期
+        assertEquals(utc(2028, Calendar.JULY, 31), monthly.nextBoundaryAfter(start, utc(2028, Calendar.JUNE, 30)));
+
+        SubscriptionPeriod weekly = SubscriptionPeriod.parse("P1W");
+        assertEquals(start + 7 * DAY, weekly.nextBoundaryAfter(start, start));
+        assertEquals(start + 7 * 53 * DAY, weekly.nextBoundaryAfter(start, start + 365 * DAY));
+    }
+
+    @Test
+    public void advance_walksRenewingSubscriptionToExpired() throws JSONException {
+        SubscriptionEntitlementEngine engine = new SubscriptionEntitlementEngine();
+        final List<SubscriptionState> states = recordStates(engine);
+        engine.setSubscriptionPeriod("vip", "P1W");
+        long purchaseTime = utc(2024, Calendar.MAY, 1);
+
+        engine.onPurchase(purchase("vip", purchaseTime, true), purchaseTime + DAY);
+        assertTrue(engine.isEntitled());
+        long renewAt = purchaseTime + 7 * DAY;
+        assertEquals(renewAt, engine.getNextTransitionTime());
+
+        assertFalse(engine.advance(renewAt - 1));
+        // 到达周期边界时保持ACTIVE，提示重新查询
+        assertTrue(engine.advance(renewAt));
+        assertEquals(SubscriptionState.ACTIVE, engine.getState("vip"));
+        assertEquals(renewAt + SubscriptionEntitlementEngine.DEFAULT_RENEWAL_CHECK_MILLIS, engine.getNextTransitionTime());
+
+        // 重新查询结果中没有该订阅，才进入宽限期
+        long holdAt = renewAt + SubscriptionEntitlementEngine.DEFAULT_GRACE_PERIOD_MILLIS;
+        long expireAt = holdAt + SubscriptionEntitlementEngine.DEFAULT_ACCOUNT_HOLD_MILLIS;
+        engine.sync(Collections.<Purchase>emptyList(), renewAt + 1);
+        assertEquals(SubscriptionState.GRACE, engine.getState("vip"));
+        assertTrue(engine.isEntitled());
+        assertEquals(holdAt, engine.getNextTransitionTime());
+
+        engine.advance(holdAt);
+        assertEquals(SubscriptionState.ON_HOLD, engine.getState("vip"));
+        assertFalse(engine.isEntitled());
+
+        engine.advance(expireAt);
+        assertEquals(Arrays.asList(SubscriptionState.ACTIVE, SubscriptionState.GRACE,
+                SubscriptionState.ON_HOLD, SubscriptionState.EXPIRED), states);
+        assertEquals(Long.MAX_VALUE, engine.getNextTransitionTime());
+    }
+
+    @Test
+    public void sync_renewedSubscriptionStaysActiveIntoNextPeriod() throws JSONException {
+        SubscriptionEntitlementEngine engine = new SubscriptionEntitlementEngine();
+        final List<SubscriptionState> states = recordStates(engine);
+        engine.setSubscriptionPeriod("vip", "P1W");
+        long purchaseTime = utc(2024, Calendar.MAY, 1);
+        engine.onPurchase(purchase("vip", purchaseTime, true), purchaseTime);
+        long renewAt = purchaseTime + 7 * DAY;
+
+        assertTrue(engine.advance(renewAt));
+        // 没有查询结果时按间隔重复提示
+        long recheckAt = renewAt + SubscriptionEntitlementEngine.DEFAULT_RENEWAL_CHECK_MILLIS;
+        assertTrue(engine.advance(recheckAt));
+        assertEquals(SubscriptionState.ACTIVE, engine.getState("vip"));
+
+        engine.sync(Collections.singletonList(purchase("vip", purchaseTime, true)), recheckAt + 1);
+        assertEquals(SubscriptionState.ACTIVE, engine.getState("vip"));
+        assertEquals(renewAt + 7 * DAY, engine.getNextTransitionTime());
+        assertEquals(Collections.singletonList(SubscriptionState.ACTIVE), states);
+    }
+
+    @Test
+    public void getState_projectsWithoutAdvancing() throws JSONException {
+        SubscriptionEntitlementEngine engine = new SubscriptionEntitlementEngine();
+        final List<SubscriptionState> states = recordStates(engine);
+        engine.setSubscriptionPeriod("vip", "P1W");
+        long purchaseTime = utc(2024, Calendar.MAY, 1);
+        engine.onPurchase(purchase("vip", purchaseTime, true), purchaseTime);
+        long renewAt = purchaseTime + 7 * DAY;
+        long holdAt = renewAt + SubscriptionEntitlementEngine.DEFAULT_GRACE_PERIOD_MILLIS;
+
+        // 等待重新查询期间仍享有权益
+        assertEquals(SubscriptionState.ACTIVE, engine.getState("vip", renewAt + DAY));
+        assertTrue(engine.isEntitled(renewAt + DAY));
+        assertEquals(SubscriptionState.ON_HOLD, engine.getState("vip", holdAt));
+        assertFalse(engine.isEntitled("vip", holdAt));
+        assertEquals(SubscriptionState.EXPIRED,
+                engine.getState("vip", holdAt + SubscriptionEntitlementEngine.DEFAULT_ACCOUNT_HOLD_MILLIS));
+
+        // 推算不修改状态也不回调
+        assertEquals(SubscriptionState.ACTIVE, engine.getState("vip"));
+        assertEquals(renewAt, engine.getNextTransitionTime());
+        assertEquals(1, states.size());
+    }
+
+    @Test
+    public void advance_catchesUpSeveralTransitionsAtOnce() throws JSONException {
+        SubscriptionEntitlementEngine engine = new SubscriptionEntitlementEngine();
+        engine.setSubscriptionPeriod("vip", "P1W");
+        long purchaseTime = utc(2024, Calendar.MAY, 1);
+        engine.onPurchase(purchase("vip", purchaseTime, true), purchaseTime);
+
+        // 定时器在深度睡眠后延迟触发，宽限期内没有查询结果，一次补上所有已到期的转换
+        engine.advance(purchaseTime + 365 * DAY);
+        assertEquals(SubscriptionState.EXPIRED, engine.getState("vip"));
+        assertFalse(engine.isEntitled());
+    }
+
+    @Test
+    public void sync_handlesSubscriptionsMissingFromPurchases() throws JSONException {
+        SubscriptionEntitlementEngine engine = new SubscriptionEntitlementEngine();
+        long now = utc(2024, Calendar.MAY, 1);
+        engine.sync(Arrays.asList(purchase("renewing", now, true), purchase("one_off", now, false)), now);
+        assertTrue(engine.isEntitled("renewing"));
+        assertTrue(engine.isEntitled("one_off"));
+
+        engine.sync(Collections.<Purchase>emptyList(), now + DAY);
+        assertEquals(SubscriptionState.ON_HOLD, engine.getState("renewing"));
+        assertEquals(SubscriptionState.EXPIRED, engine.getState("one_off"));
+        assertFalse(engine.isEntitled());
+        assertEquals(now + DAY + SubscriptionEntitlementEngine.DEFAULT_ACCOUNT_HOLD_MILLIS, engine.getNextTransitionTime());
+
+        engine.sync(Collections.singletonList(purchase("renewing", now + 2 * DAY, true)), now + 2 * DAY);
+        assertEquals(SubscriptionState.ACTIVE, engine.getState("renewing"));
+        assertTrue(engine.isEntitled());
+    }
+
+    private static List<SubscriptionState> recordStates(SubscriptionEntitlementEngine engine) {
+        final List<SubscriptionState> states = new ArrayList<>();
+        engine.setOnStateChangedListener(new SubscriptionEntitlementEngine.OnStateChangedListener() {
+            @Override
+            public void onStateChanged(String sku, SubscriptionState oldState, SubscriptionState newState) {
+                states.add(newState);
+            }
+        });
+        return states;
+    }
+
+    private static Purchase purchase(String sku, long purchaseTime, boolean autoRenewing) throws JSONException {
+        return new Purchase("{\"productId\":\"" + sku + "\",\"purchaseToken\":\"token_" + sku
+                + "\",\"purchaseTime\":" + purchaseTime + ",\"purchaseState\":0,\"autoRenewing\":" + autoRenewing + "}", "");
+    }
+
+    private static long utc(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(year, month, day);
+        return calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,329 @@
+package com.pay.android.billing.verify;
+
+import com.android.billingclient.api.BillingClient;
+import com.pay.android.billing.catalogue.PurchaseClassifier;
+import com.pay.android.billing.catalogue.SkuCatalogue;
+import com.pay.android.billing.model.PurchaseInfo;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 使用本地HTTP服务模拟服务端校验接口
+ */
+public class VerificationUploaderTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private HttpServer server;
+    private File queueDir;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile int responseCode = 200;
+    private volatile boolean malformedResponse;
+
+    @Before
+    public void setUp() throws IOException {
+        queueDir = Files.createTempDirectory("verify").toFile();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/verify", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requestCount.incrementAndGet();
+                byte[] response;
+                try {
+                    assertEquals("gzip", exchange.getRequestHeaders().getFirst("Content-Encoding"));
+                    JSONArray purchases = new JSONArray(new String(readFully(
+                            new GZIPInputStream(exchange.getRequestBody())), "UTF-8"));
+                    JSONArray results = new JSONArray();
+                    for (int i = 0; i < purchases.length(); i++) {
+                        String token = purchases.getJSONObject(i).getString("purchaseToken");
+                        if (token.startsWith("later") && requestCount.get() == 1) {
+                            // 第一次请求时服务端还没有结果
+                            continue;
+                        }
+                        results.put(new JSONObject()
+                                .put("purchaseToken", token)
+                                .put("valid", !token.startsWith("bad")));
+                    }
+                    response = (malformedResponse ? "{\"error\":\"busy\"}" : new JSONObject().put("results", results).toString())
+                            .getBytes("UTF-8");
+                } catch (Exception e) {
+                    response = new byte[0];
+                }
+                exchange.sendResponseHeaders(responseCode, response.length == 0 ? -1 : response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        File[] files = queueDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        queueDir.delete();
+    }
+
+    @Test
+    public void flush_uploadsBatchesAndReportsVerdicts() throws Exception {
+        VerificationUploader uploader = newUploader();
+        final Map<String, Boolean> verdicts = new ConcurrentHashMap<>();
+        final CountDownLatch latch = new CountDownLatch(3);
+        uploader.setCallback(new SimpleCallback() {
+            @Override
+            public void onVerified(PurchaseInfo purchaseInfo, boolean valid) {
+                verdicts.put(purchaseInfo.getPurchaseToken(), valid);
+                latch.countDown();
+            }
+        });
+
+        uploader.enqueue(purchases("token-1", "token-2", "bad-token"));
+        uploader.flush();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(2, requestCount.get());
+        assertEquals(Boolean.TRUE, verdicts.get("token-1"));
+        assertEquals(Boolean.TRUE, verdicts.get("token-2"));
+        assertEquals(Boolean.FALSE, verdicts.get("bad-token"));
+        assertEquals(0, uploader.getQueuedBatchCount());
+        uploader.shutdown();
+    }
+
+    @Test
+    public void flush_keepsBatchOnServerError() throws Exception {
+        responseCode = 503;
+        VerificationUploader uploader = newUploader();
+        final CountDownLatch failed = new CountDownLatch(1);
+        final boolean[] retained = new boolean[1];
+        uploader.setCallback(new SimpleCallback() {
+            @Override
+            public void onUploadFailed(int purchaseCount, boolean isRetained, Exception e) {
+                retained[0] = isRetained;
+                failed.countDown();
+            }
+        });
+
+        uploader.enqueue(purchases("token-1"));
+        uploader.flush();
+
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        assertTrue(retained[0]);
+        assertEquals(1, uploader.getQueuedBatchCount());
+
+        responseCode = 200;
+        final CountDownLatch verified = new CountDownLatch(1);
+        uploader.setCallback(new SimpleCallback() {
+            @Override
+            public void onVerified(PurchaseInfo purchaseInfo, boolean valid) {
+                verified.countDown();
+            }
+        });
+        uploader.flush();
+
+        assertTrue(verified.await(5, TimeUnit.SECONDS));
+        assertEquals(0, uploader.getQueuedBatchCount());
+        uploader.shutdown();
+    }
+
+    @Test
+    public void flush_retainsMalformedResponseAndRequeuesMissingResults() throws Exception {
+        malformedResponse = true;
+        VerificationUploader uploader = newUploader();
+        final CountDownLatch failed = new CountDownLatch(1);
+        final boolean[] retained = new boolean[1];
+        uploader.setCallback(new SimpleCallback() {
+            @Override
+            public void onUploadFailed(int purchaseCount, boolean isRetained, Exception e) {
+                retained[0] = isRetained;
+                failed.countDown();
+            }
+        });
+        uploader.enqueue(purchases("token-1", "later-token"));
+        uploader.flush();
+
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        assertTrue(retained[0]);
+        assertEquals(1, uploader.getQueuedBatchCount());
+
+        // 响应中缺少的订单写入新批次，下一次flush时上传
+        malformedResponse = false;
+        requestCount.set(0);
+        final List<String> verified = new ArrayList<>();
+        final CountDownLatch first = new CountDownLatch(1);
+        uploader.setCallback(new SimpleCallback() {
+            @Override
+            public void onVerified(PurchaseInfo purchaseInfo, boolean valid) {
+                verified.add(purchaseInfo.getPurchaseToken());
+                first.countDown();
+            }
+        });
+        uploader.flush();
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        assertEquals(1, verified.size());
+        assertEquals("token-1", verified.get(0));
+        assertEquals(1, uploader.getQueuedBatchCount());
+
+        final CountDownLatch second = new CountDownLatch(1);
+        uploader.setCallback(new SimpleCallback() {
+            @Override
+            public void onVerified(PurchaseInfo purchaseInfo, boolean valid) {
+                verified.add(purchaseInfo.getPurchaseToken());
+                second.countDown();
+            }
+        });
+        uploader.flush();
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+        assertEquals("later-token", verified.get(1));
+        assertEquals(0, uploader.getQueuedBatchCount());
+        uploader.shutdown();
+    }
+
+    @Test
+    public void flush_keepsSkuTypeOfSkuOutsideCatalogue() throws Exception {
+        VerificationUploader uploader = newUploader();
+        final PurchaseInfo[] verified = new PurchaseInfo[1];
+        final CountDownLatch latch = new CountDownLatch(1);
+        uploader.setCallback(new SimpleCallback() {
+            @Override
+            public void onVerified(PurchaseInfo purchaseInfo, boolean valid) {
+                verified[0] = purchaseInfo;
+                latch.countDown();
+            }
+        });
+
+        List<PurchaseInfo> purchases = purchases("token-1");
+        purchases.get(0).setSku("legacy_vip");
+        purchases.get(0).setSkuType(BillingClient.SkuType.SUBS);
+        uploader.enqueue(purchases);
+        uploader.flush();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(BillingClient.SkuType.SUBS, verified[0].getSkuType());
+        // 校验通过后按入队时的类型确认，不依赖商品目录
+        byte kind = PurchaseClassifier.kindOf(SkuCatalogue.EMPTY, verified[0].getSku(), verified[0].getSkuType());
+        assertEquals(BillingClient.SkuType.SUBS, PurchaseClassifier.skuTypeOf(kind));
+        uploader.shutdown();
+    }
+
+    @Test
+    public void enqueue_skipsTokensAlreadyQueued() throws Exception {
+        // 上传失败时批次保留在磁盘上，通过失败回调统计每个批次的订单数
+        responseCode = 503;
+        final AtomicInteger failedPurchases = new AtomicInteger();
+        VerificationUploader uploader = newUploader();
+        final CountDownLatch failed = new CountDownLatch(1);
+        uploader.setCallback(new SimpleCallback() {
+            @Override
+            public void onUploadFailed(int purchaseCount, boolean retained, Exception e) {
+                failedPurchases.addAndGet(purchaseCount);
+                failed.countDown();
+            }
+        });
+        uploader.enqueue(purchases("token-1", "token-2"));
+        uploader.enqueue(purchases("token-2", "token-1"));
+        uploader.flush();
+
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, uploader.getQueuedBatchCount());
+        assertEquals(2, failedPurchases.get());
+        uploader.shutdown();
+
+        // 新实例从磁盘重建已入队的token
+        failedPurchases.set(0);
+        VerificationUploader restored = newUploader();
+        final CountDownLatch restoredFailed = new CountDownLatch(2);
+        restored.setCallback(new SimpleCallback() {
+            @Override
+            public void onUploadFailed(int purchaseCount, boolean retained, Exception e) {
+                failedPurchases.addAndGet(purchaseCount);
+                restoredFailed.countDown();
+            }
+        });
+        restored.enqueue(purchases("token-1", "token-3"));
+        restored.flush();
+
+        assertTrue(restoredFailed.await(5, TimeUnit.SECONDS));
+        assertEquals(2, restored.getQueuedBatchCount());
+        assertEquals(3, failedPurchases.get());
+        restored.shutdown();
+    }
+
+    private VerificationUploader newUploader() throws IOException {
+        URL endpoint = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/verify");
+        VerificationUploader uploader = new VerificationUploader(endpoint, queueDir, 2, DIRECT);
+        uploader.setBatchSize(2);
+        return uploader;
+    }
+
+    private static List<PurchaseInfo> purchases(String... tokens) {
+        List<PurchaseInfo> purchases = new ArrayList<>();
+        for (String token : tokens) {
+            PurchaseInfo purchase = new PurchaseInfo();
+            purchase.setPurchaseToken(token);
+            purchase.setSku("sku");
+            purchase.setPackageName("com.pay.android.billing.sample");
+            purchase.setPurchaseTime(System.currentTimeMillis());
+            purchases.add(purchase);
+        }
+        return purchases;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static class SimpleCallback implements VerificationUploader.Callback {
+        @Override
+        public void onVerified(PurchaseInfo purchaseInfo, boolean valid) {
+        }
+
+        @Override
+        public void onUploadFailed(int purchaseCount, boolean retained, Exception e) {
+        }
+    }
+}